@@ -0,0 +1,42 @@
+package ug.campus;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/** Whole distance tables: blocked Floyd-Warshall (double or float storage) against one Dijkstra per source. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class AllPairsBench {
+    @Param({ "drive", "grid30" })
+    public String graph;
+
+    private Metric metric;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        metric = Metric.distance(BenchGraphs.csr(graph));
+    }
+
+    // table storage only matters to Floyd-Warshall
+    @State(Scope.Benchmark)
+    public static class Storage {
+        @Param({ "false", "true" })
+        public boolean floats;
+    }
+
+    @Benchmark
+    public FloydWarshall floydWarshall(Storage storage) {
+        return new FloydWarshall(metric, storage.floats, false, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public void dijkstraRows(Blackhole bh) {
+        new AllPairs(metric, AllPairs.Method.DIJKSTRA, false, ForkJoinPool.commonPool()).forEachRow((s, row) -> bh.consume(row[s]));
+    }
+}
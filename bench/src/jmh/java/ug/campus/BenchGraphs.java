@@ -0,0 +1,116 @@
+package ug.campus;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Input files for the benchmarks: "drive" is the real data/road_drive_* graph
+ * with data/nodes.csv, "gridN" an N x N synthetic street grid (40 m blocks,
+ * some streets missing, mixed speeds) with POIs scattered over it, written
+ * once per JVM to a temp directory in the same CSV formats.
+ */
+final class BenchGraphs {
+    private static final double BLOCK_METERS = 40.0;
+    private static final double ORIGIN_LAT = 5.6400, ORIGIN_LON = -0.1950;
+    private static final String[] PLACE_WORDS = { "Hall", "Library", "Bank", "Cafe", "Clinic", "Lecture Theatre", "Hostel", "Gate", "Shop", "Chapel" };
+    private static final String[] PLACE_TYPES = { "hall", "library", "bank", "cafe", "clinic", "school", "hostel", "gate", "shop", "place_of_worship" };
+
+    private static final Map<String, Inputs> written = new HashMap<>();
+
+    /** Paths of one graph's road node, road edge and POI CSVs. */
+    static final class Inputs {
+        final String nodes, edges, pois;
+
+        Inputs(String nodes, String edges, String pois) {
+            this.nodes = nodes;
+            this.edges = edges;
+            this.pois = pois;
+        }
+    }
+
+    private BenchGraphs() {
+    }
+
+    static synchronized Inputs files(String graph) throws IOException {
+        if (graph.equals("drive")) {
+            File data = new File(System.getProperty("campus.data", "data"));
+            return new Inputs(new File(data, "road_drive_nodes.csv").getPath(), new File(data, "road_drive_edges.csv").getPath(),
+                    new File(data, "nodes.csv").getPath());
+        }
+        if (!graph.startsWith("grid")) throw new IllegalArgumentException("Unknown graph '" + graph + "' (drive or gridN)");
+        Inputs f = written.get(graph);
+        if (f == null) {
+            f = writeGrid(Integer.parseInt(graph.substring(4)));
+            written.put(graph, f);
+        }
+        return f;
+    }
+
+    static CsrGraph csr(String graph) throws IOException {
+        Inputs f = files(graph);
+        return RoadGraphLoader.loadCsr(f.nodes, f.edges);
+    }
+
+    static Graph pois(String graph) throws Exception {
+        Graph pois = new Graph();
+        Main.loadNodes(pois, files(graph).pois);
+        return pois;
+    }
+
+    /** count (source, target) road id pairs drawn with a fixed seed. */
+    static int[][] queries(CsrGraph csr, int count) {
+        Random rnd = new Random(42);
+        int[][] q = new int[count][];
+        for (int i = 0; i < count; i++) q[i] = new int[] { csr.ids[rnd.nextInt(csr.n)], csr.ids[rnd.nextInt(csr.n)] };
+        return q;
+    }
+
+    private static Inputs writeGrid(int side) throws IOException {
+        File dir = Files.createTempDirectory("campus-grid" + side).toFile();
+        dir.deleteOnExit();
+        File nodes = new File(dir, "road_nodes.csv"), edges = new File(dir, "road_edges.csv"), pois = new File(dir, "nodes.csv");
+        double dLat = BLOCK_METERS / 111_195.0;
+        double dLon = dLat / Math.cos(Math.toRadians(ORIGIN_LAT));
+        Random rnd = new Random(side);
+        try (PrintWriter pw = writer(nodes)) {
+            pw.println("id,lat,lon");
+            for (int r = 0; r < side; r++) {
+                for (int c = 0; c < side; c++) pw.printf(Locale.US, "%d,%.7f,%.7f%n", r * side + c + 1, ORIGIN_LAT + r * dLat, ORIGIN_LON + c * dLon);
+            }
+        }
+        try (PrintWriter pw = writer(edges)) {
+            pw.println("fromId,toId,distanceMeters,speedKph,undirected,highway");
+            for (int r = 0; r < side; r++) {
+                for (int c = 0; c < side; c++) {
+                    int id = r * side + c + 1;
+                    // every tenth street segment is missing; every fifth row and column is a faster road
+                    if (c + 1 < side && rnd.nextInt(10) != 0) street(pw, id, id + 1, r % 5 == 0, rnd);
+                    if (r + 1 < side && rnd.nextInt(10) != 0) street(pw, id, id + side, c % 5 == 0, rnd);
+                }
+            }
+        }
+        try (PrintWriter pw = writer(pois)) {
+            pw.println("id,name,lat,lon,type");
+            int count = Math.max(10, side * side / 20);
+            for (int i = 0; i < count; i++) {
+                int kind = rnd.nextInt(PLACE_WORDS.length);
+                double lat = ORIGIN_LAT + rnd.nextDouble() * (side - 1) * dLat;
+                double lon = ORIGIN_LON + rnd.nextDouble() * (side - 1) * dLon;
+                pw.printf(Locale.US, "%d,%s %d,%.7f,%.7f,%s%n", i + 1, PLACE_WORDS[kind], i / PLACE_WORDS.length + 1, lat, lon, PLACE_TYPES[kind]);
+            }
+        }
+        for (File f : new File[] { nodes, edges, pois }) f.deleteOnExit();
+        return new Inputs(nodes.getPath(), edges.getPath(), pois.getPath());
+    }
+
+    private static void street(PrintWriter pw, int a, int b, boolean main, Random rnd) {
+        double meters = BLOCK_METERS * (1 + 0.2 * rnd.nextDouble());
+        pw.printf(Locale.US, "%d,%d,%.1f,%d,1,%s%n", a, b, meters, main ? 50 : 30, main ? "secondary" : "residential");
+    }
+
+    private static PrintWriter writer(File f) throws IOException {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,31 @@
+package ug.campus;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** CSV parsing into the object graph and straight into CSR arrays. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoaderBench {
+    @Param({ "drive", "grid100", "grid300" })
+    public String graph;
+
+    private BenchGraphs.Inputs files;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        files = BenchGraphs.files(graph);
+    }
+
+    @Benchmark
+    public Graph load() throws Exception {
+        return RoadGraphLoader.load(files.nodes, files.edges);
+    }
+
+    @Benchmark
+    public CsrGraph loadCsr() throws Exception {
+        return RoadGraphLoader.loadCsr(files.nodes, files.edges);
+    }
+}
@@ -0,0 +1,80 @@
+package ug.campus;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query time under each node order. SHUFFLED scatters the dense indices at
+ * random, standing in for an extract whose ids carry no locality; the others
+ * are the NodeOrder the loader would apply. Run with -Pprofilers=perfnorm (Linux
+ * perf) to see cache misses per query next to the times.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocalityBench {
+    private static final int QUERIES = 512;
+
+    @Param({ "drive", "grid300" })
+    public String graph;
+
+    @Param({ "SHUFFLED", "ID", "HILBERT", "RCM" })
+    public String order;
+
+    private RouteFinder finder;
+    private int[][] queries;
+    private int[] targets;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchGraphs.Inputs f = BenchGraphs.files(graph);
+        CsrGraph csr;
+        if (order.equals("SHUFFLED")) {
+            csr = RoadGraphLoader.loadCsr(f.nodes, f.edges, NodeOrder.ID);
+            int[] perm = new int[csr.n];
+            for (int i = 0; i < perm.length; i++) perm[i] = i;
+            Random rnd = new Random(7);
+            for (int i = perm.length - 1; i > 0; i--) {
+                int j = rnd.nextInt(i + 1), t = perm[i];
+                perm[i] = perm[j];
+                perm[j] = t;
+            }
+            csr = csr.renumbered(perm);
+        } else {
+            csr = RoadGraphLoader.loadCsr(f.nodes, f.edges, NodeOrder.valueOf(order));
+        }
+        System.out.println(order + ": " + NodeOrder.locality(csr));
+        finder = new RouteFinder(csr);
+        // the same id pairs under every order
+        queries = BenchGraphs.queries(RoadGraphLoader.loadCsr(f.nodes, f.edges, NodeOrder.ID), QUERIES);
+        targets = new int[64];
+        for (int i = 0; i < targets.length; i++) targets[i] = queries[i][1];
+    }
+
+    private int[] nextQuery() {
+        int[] q = queries[next];
+        next = (next + 1) % QUERIES;
+        return q;
+    }
+
+    @Benchmark
+    public List<Integer> dijkstra() {
+        int[] q = nextQuery();
+        return finder.dijkstra(q[0], q[1]);
+    }
+
+    @Benchmark
+    public List<Integer> aStar() {
+        int[] q = nextQuery();
+        return finder.aStar(q[0], q[1]);
+    }
+
+    @Benchmark
+    public double[] oneToMany() {
+        return finder.distancesFrom(nextQuery()[0], targets);
+    }
+}
@@ -0,0 +1,74 @@
+package ug.campus;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/** POI snapping, name resolution and the batch distance export. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PoiBench {
+    @Param({ "drive", "grid100" })
+    public String graph;
+
+    private Graph road;
+    private Graph pois;
+    private Map<Integer, Integer> snap;
+    private String[] names;
+    private int next;
+    private File out;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchGraphs.Inputs f = BenchGraphs.files(graph);
+        road = RoadGraphLoader.load(f.nodes, f.edges);
+        road.spatialIndex();
+        pois = BenchGraphs.pois(graph);
+        pois.nameIndex();
+        snap = Main.snapPOIs(pois, road, Main.SNAP_METERS);
+        // full names, first words (usually ambiguous) and misspellings
+        List<String> q = new ArrayList<>();
+        for (Node p : pois.nodes.values()) {
+            q.add(p.name);
+            q.add(p.name.split(" ")[0]);
+            if (p.name.length() > 4) q.add(p.name.substring(0, 2) + p.name.substring(3));
+        }
+        Collections.shuffle(q, new Random(7));
+        names = q.toArray(new String[0]);
+        out = File.createTempFile("batch", ".csv");
+        out.deleteOnExit();
+        // resolveNode prints the choices for ambiguous names
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> snapPOIs() {
+        return Main.snapPOIs(pois, road, Main.SNAP_METERS);
+    }
+
+    @Benchmark
+    public int resolveNode() {
+        String q = names[next];
+        next = (next + 1) % names.length;
+        return Main.resolveNode(pois, q, null, new Scanner("\n"));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long exportBatchDistances() throws Exception {
+        Main.exportBatchDistances(pois, road, snap, out.getPath());
+        return out.length();
+    }
+}
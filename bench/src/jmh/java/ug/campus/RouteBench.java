@@ -0,0 +1,61 @@
+package ug.campus;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Point-to-point queries over a fixed set of random node pairs, one pair per invocation. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RouteBench {
+    private static final int QUERIES = 512;
+
+    @Param({ "drive", "grid100", "grid300" })
+    public String graph;
+
+    private RouteFinder finder;
+    private RouteFinder fullGraph; // searches every shape point, for comparison
+    private int[][] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        CsrGraph csr = BenchGraphs.csr(graph);
+        finder = new RouteFinder(csr);
+        fullGraph = new RouteFinder(csr);
+        fullGraph.useChains(null);
+        queries = BenchGraphs.queries(csr, QUERIES);
+    }
+
+    private int[] nextQuery() {
+        int[] q = queries[next];
+        next = (next + 1) % QUERIES;
+        return q;
+    }
+
+    @Benchmark
+    public List<Integer> dijkstra() {
+        int[] q = nextQuery();
+        return finder.dijkstra(q[0], q[1]);
+    }
+
+    @Benchmark
+    public List<Integer> dijkstraFullGraph() {
+        int[] q = nextQuery();
+        return fullGraph.dijkstra(q[0], q[1]);
+    }
+
+    @Benchmark
+    public List<Integer> aStar() {
+        int[] q = nextQuery();
+        return finder.aStar(q[0], q[1]);
+    }
+
+    @Benchmark
+    public List<List<Integer>> kAlternatives() {
+        int[] q = nextQuery();
+        return finder.kAlternatives(q[0], q[1], 3);
+    }
+}
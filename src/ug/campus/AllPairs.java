@@ -0,0 +1,121 @@
+package ug.campus;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * All-pairs shortest costs for one metric, handed out row by row so callers
+ * can stream them instead of holding the whole n x n table.
+ *
+ * Dense graphs go through the blocked {@link FloydWarshall}; sparse ones (road
+ * networks have a handful of edges per node) through one Dijkstra per source on
+ * the CSR arrays, computed in parallel batches and emitted in source order, so
+ * only a batch of rows is ever in memory.
+ */
+public final class AllPairs {
+    public enum Method { AUTO, FLOYD_WARSHALL, DIJKSTRA }
+
+    /** Receives the costs from dense source index `source` to every dense index; the array is reused after the call. */
+    public interface RowSink {
+        void row(int source, double[] costs);
+    }
+
+    // Floyd-Warshall does n^3 relaxations, n Dijkstras about (m + n) log2 n heap-bound steps each
+    // per source; the factor is how many relaxations one such step is worth
+    private static final double DIJKSTRA_STEP_COST = 8.0;
+    private static final int ROWS_PER_THREAD = 4;
+
+    private final Metric metric;
+    private final CsrGraph csr;
+    private final Method method;
+    private final boolean floats;
+    private final ForkJoinPool pool;
+
+    public AllPairs(Metric metric) {
+        this(metric, Method.AUTO, false, ForkJoinPool.commonPool());
+    }
+
+    /** floats stores the Floyd-Warshall table as float (half the memory); Dijkstra rows are always double. */
+    public AllPairs(Metric metric, Method method, boolean floats, ForkJoinPool pool) {
+        this.metric = metric;
+        this.csr = metric.csr;
+        this.method = method == Method.AUTO ? choose(csr) : method;
+        this.floats = floats;
+        this.pool = pool;
+    }
+
+    static Method choose(CsrGraph g) {
+        double n = g.n;
+        double dijkstra = DIJKSTRA_STEP_COST * n * (g.m + n) * (Math.log(Math.max(2, n)) / Math.log(2));
+        return n * n * n <= dijkstra ? Method.FLOYD_WARSHALL : Method.DIJKSTRA;
+    }
+
+    /** The method actually used (AUTO resolved). */
+    public Method method() {
+        return method;
+    }
+
+    /** Every row in ascending dense source order, on the calling thread. */
+    public void forEachRow(RowSink sink) {
+        if (method == Method.FLOYD_WARSHALL) {
+            FloydWarshall fw = new FloydWarshall(metric, floats, false, pool);
+            double[] row = new double[csr.n];
+            for (int i = 0; i < csr.n; i++) {
+                fw.copyRow(i, row);
+                sink.row(i, row);
+            }
+        } else {
+            dijkstraRows(sink);
+        }
+    }
+
+    /** The whole table with external ids as row and column labels (n^2 doubles). */
+    public DistanceMatrix matrix() {
+        DistanceMatrix m = new DistanceMatrix(csr.ids.clone(), csr.ids.clone());
+        forEachRow(m::setRow);
+        return m;
+    }
+
+    private void dijkstraRows(RowSink sink) {
+        int n = csr.n;
+        if (n == 0) return;
+        int batch = Math.min(n, Math.max(1, pool.getParallelism() * ROWS_PER_THREAD));
+        double[][] rows = new double[batch][n];
+        ThreadLocal<SearchContext> contexts = ThreadLocal.withInitial(() -> new SearchContext(n));
+        for (int start = 0; start < n; start += batch) {
+            int first = start, count = Math.min(batch, n - start);
+            try {
+                pool.submit(() -> IntStream.range(0, count).parallel()
+                        .forEach(r -> oneToAll(first + r, rows[r], contexts.get()))).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("All-pairs computation interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("All-pairs computation failed", e.getCause());
+            }
+            for (int r = 0; r < count; r++) sink.row(first + r, rows[r]);
+        }
+    }
+
+    private void oneToAll(int s, double[] out, SearchContext ctx) {
+        double[] w = metric.weight;
+        ctx.reset();
+        IndexedHeap heap = ctx.heap;
+        ctx.set(s, 0.0, -1);
+        heap.insertOrDecrease(s, 0.0);
+        while (!heap.isEmpty()) {
+            int u = heap.pollMin();
+            double du = ctx.dist(u);
+            for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                int v = csr.targets[e];
+                double alt = du + w[e];
+                if (alt < ctx.dist(v)) {
+                    ctx.set(v, alt, u);
+                    heap.insertOrDecrease(v, alt);
+                }
+            }
+        }
+        for (int v = 0; v < out.length; v++) out[v] = ctx.dist(v);
+    }
+}
@@ -0,0 +1,506 @@
+package ug.campus;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Road distances between every pair of snapped POIs (fromId < toId, in id order),
+ * written as CSV, gzip-compressed CSV or a binary columnar file.
+ *
+ * The POIs are cut into chunks of roughly equal row counts. Worker threads fetch
+ * the distance row of each distinct snapped road node among a chunk's POIs and
+ * encode the chunk's rows into one block. Each row comes from one one-to-many
+ * search shared by every chunk that reads it, and is dropped after the last of
+ * them; if the rows of all sources would exceed SHARED_ROW_BYTES they are not
+ * shared, and a node is searched once per chunk instead. A bounded window of
+ * pending chunks feeds the single writer, which appends the blocks in order, so
+ * memory stays at a few blocks per thread plus at most SHARED_ROW_BYTES of rows,
+ * whatever the POI count. After every block the writer forces the file and
+ * records a checkpoint (output + ".checkpoint"); an interrupted export run again
+ * with resume picks up after the last recorded block, provided the graph, POIs
+ * and format are the same.
+ *
+ * Formats:
+ *   CSV       fromId,toId,straightMeters,roadMeters,ratio (1, 1 and 2 decimals)
+ *   CSV_GZIP  the same text, one gzip member per block (gunzip and GZIPInputStream read them as one stream)
+ *   BINARY    little-endian: magic "UGBD", version; then per block: int rows, int fromId[rows],
+ *             int toId[rows], double straightMeters[rows], double roadMeters[rows]
+ */
+public final class BatchExporter {
+    public enum Format {
+        CSV(".csv"), CSV_GZIP(".csv.gz"), BINARY(".bin");
+
+        public final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    private static final String HEADER = "fromId,toId,straightMeters,roadMeters,ratio";
+    private static final int BINARY_MAGIC = 0x44424755; // "UGBD" little-endian
+    private static final int BINARY_VERSION = 1;
+    private static final int MIN_CHUNK_ROWS = 1024;
+    private static final int MAX_CHUNK_ROWS = 65536;
+    private static final int CHUNKS_PER_THREAD = 8;
+    private static final int PENDING_PER_THREAD = 2;
+    private static final long SHARED_ROW_BYTES = 128L << 20;
+
+    /** Outcome of one export call. */
+    public static final class Result {
+        public final long rows;
+        public final int chunks, resumedChunks;
+        public final long bytes;
+
+        Result(long rows, int chunks, int resumedChunks, long bytes) {
+            this.rows = rows;
+            this.chunks = chunks;
+            this.resumedChunks = resumedChunks;
+            this.bytes = bytes;
+        }
+    }
+
+    private final RouteFinder finder;
+    private final int threads;
+    // snapped POIs in id order
+    private final int count;
+    private final int[] poiIds, roadIds;
+    private final double[] lat, lon;
+    private final int[] column;     // POI -> index into sources
+    private final int[] sources;    // distinct snapped road ids, ascending
+    private final int poiTotal;
+
+    public BatchExporter(RouteFinder finder, Graph pois, Map<Integer, Integer> snap, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+        this.finder = finder;
+        this.threads = threads;
+        this.poiTotal = pois.nodes.size();
+        List<Node> list = new ArrayList<>();
+        for (Node p : pois.nodes.values()) if (snap.containsKey(p.id)) list.add(p);
+        list.sort(Comparator.comparingInt(n -> n.id));
+        count = list.size();
+        poiIds = new int[count];
+        roadIds = new int[count];
+        lat = new double[count];
+        lon = new double[count];
+        for (int i = 0; i < count; i++) {
+            Node p = list.get(i);
+            poiIds[i] = p.id;
+            roadIds[i] = snap.get(p.id);
+            lat[i] = p.lat;
+            lon[i] = p.lon;
+        }
+        // search sources and targets: POIs snapped to the same road node share them
+        sources = Arrays.stream(roadIds).distinct().sorted().toArray();
+        column = new int[count];
+        for (int i = 0; i < count; i++) column[i] = Arrays.binarySearch(sources, roadIds[i]);
+    }
+
+    public Result export(String out, Format format, boolean resume) throws IOException {
+        File file = new File(out);
+        File checkpoint = new File(out + ".checkpoint");
+        long key = inputKey(format);
+        int chunkRows = Math.max(MIN_CHUNK_ROWS, Math.min(MAX_CHUNK_ROWS, (int) (pairCount() / ((long) threads * CHUNKS_PER_THREAD))));
+        int done = 0;
+        long rows = 0, bytes = 0;
+        if (resume && checkpoint.exists()) {
+            Properties cp = readCheckpoint(checkpoint);
+            if (cp != null && Long.parseLong(cp.getProperty("key")) == key && file.length() >= Long.parseLong(cp.getProperty("bytes"))) {
+                chunkRows = Integer.parseInt(cp.getProperty("chunkRows"));
+                done = Integer.parseInt(cp.getProperty("chunks"));
+                rows = Long.parseLong(cp.getProperty("rows"));
+                bytes = Long.parseLong(cp.getProperty("bytes"));
+            }
+        }
+        int[] starts = chunkStarts(chunkRows);
+        int chunks = starts.length - 1;
+        int resumed = done;
+        SourceRows shared = 8L * sources.length * sources.length <= SHARED_ROW_BYTES ? new SourceRows(starts, done) : null;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "batch-export");
+            t.setDaemon(true);
+            return t;
+        });
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel ch = raf.getChannel();
+            ch.truncate(bytes);
+            ch.position(bytes);
+            if (done == 0 && bytes == 0) {
+                bytes += write(ch, header(format));
+                saveCheckpoint(checkpoint, key, chunkRows, 0, 0, bytes, ch);
+            }
+            // the window of pending chunks bounds memory; blocks are written in chunk order
+            ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+            int next = done;
+            while (done < chunks) {
+                while (next < chunks && pending.size() < threads * PENDING_PER_THREAD) {
+                    int c = next++;
+                    pending.add(pool.submit(() -> encode(starts[c], starts[c + 1], format, shared)));
+                }
+                Block b = await(pending.poll());
+                bytes += write(ch, b.bytes);
+                rows += b.rows;
+                saveCheckpoint(checkpoint, key, chunkRows, ++done, rows, bytes, ch);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Files.deleteIfExists(checkpoint.toPath());
+        return new Result(rows, chunks, resumed, bytes);
+    }
+
+    private static Block await(Future<Block> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch export interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IllegalStateException("Batch export failed", e.getCause());
+        }
+    }
+
+    /** Snapped POIs (the rest have no rows). */
+    public int snappedPois() {
+        return count;
+    }
+
+    public int searchSources() {
+        return sources.length;
+    }
+
+    public int pois() {
+        return poiTotal;
+    }
+
+    // Upper bound on rows: every pair of snapped POIs
+    private long pairCount() {
+        return (long) count * (count - 1) / 2;
+    }
+
+    // First POI of each chunk (plus count at the end); chunks hold about chunkRows pairs each
+    private int[] chunkStarts(int chunkRows) {
+        int[] starts = new int[16];
+        int k = 0;
+        long inChunk = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || inChunk >= chunkRows) {
+                if (k == starts.length) starts = Arrays.copyOf(starts, k * 2);
+                starts[k++] = i;
+                inChunk = 0;
+            }
+            inChunk += count - 1 - i;
+        }
+        starts = Arrays.copyOf(starts, k + 1);
+        starts[k] = count;
+        return starts;
+    }
+
+    private static final class Block {
+        final byte[] bytes;
+        final int rows;
+
+        Block(byte[] bytes, int rows) {
+            this.bytes = bytes;
+            this.rows = rows;
+        }
+    }
+
+    // Rows of POIs [from, to) against every later POI, encoded as one block; runs on a worker
+    private Block encode(int from, int to, Format format, SourceRows shared) throws IOException {
+        TextBuffer text = format == Format.BINARY ? null : new TextBuffer(64 * 1024);
+        int[] fromIds = null, toIds = null;
+        double[] straightCol = null, roadCol = null;
+        if (format == Format.BINARY) {
+            int cap = 1024;
+            fromIds = new int[cap];
+            toIds = new int[cap];
+            straightCol = new double[cap];
+            roadCol = new double[cap];
+        }
+        double[] roadMeters = roadMeters(from, to, shared);
+        int rows = 0;
+        for (int i = from, pair = 0; i < to; i++) {
+            for (int j = i + 1; j < count; j++) {
+                double road = roadMeters[pair++];
+                if (!(road > 0) || Double.isInfinite(road)) continue;
+                double straight = Main.haversine(lat[i], lon[i], lat[j], lon[j]);
+                if (text != null) {
+                    double ratio = road / (straight > 0 ? straight : road);
+                    text.append(poiIds[i]).append(',').append(poiIds[j]).append(',')
+                            .appendFixed(straight, 1).append(',').appendFixed(road, 1).append(',').appendFixed(ratio, 2).newLine();
+                } else {
+                    if (rows == fromIds.length) {
+                        fromIds = Arrays.copyOf(fromIds, rows * 2);
+                        toIds = Arrays.copyOf(toIds, rows * 2);
+                        straightCol = Arrays.copyOf(straightCol, rows * 2);
+                        roadCol = Arrays.copyOf(roadCol, rows * 2);
+                    }
+                    fromIds[rows] = poiIds[i];
+                    toIds[rows] = poiIds[j];
+                    straightCol[rows] = straight;
+                    roadCol[rows] = road;
+                }
+                rows++;
+            }
+        }
+        switch (format) {
+            case CSV: return new Block(text.toByteArray(), rows);
+            case CSV_GZIP: return new Block(gzip(text.toByteArray()), rows);
+            default: {
+                ByteBuffer b = ByteBuffer.allocate(4 + rows * 24).order(ByteOrder.LITTLE_ENDIAN);
+                b.putInt(rows);
+                b.asIntBuffer().put(fromIds, 0, rows);
+                b.position(4 + 4 * rows);
+                b.asIntBuffer().put(toIds, 0, rows);
+                b.position(4 + 8 * rows);
+                b.asDoubleBuffer().put(straightCol, 0, rows);
+                b.position(4 + 16 * rows);
+                b.asDoubleBuffer().put(roadCol, 0, rows);
+                return new Block(b.array(), rows);
+            }
+        }
+    }
+
+    // Road distance of every pair (i, j > i) for i in [from, to), in row order; one row fetch per distinct source
+    private double[] roadMeters(int from, int to, SourceRows shared) {
+        int[] base = new int[to - from];
+        int pairs = 0;
+        for (int i = from; i < to; i++) {
+            base[i - from] = pairs;
+            pairs += count - 1 - i;
+        }
+        // the chunk's POIs grouped by source, id order within a group
+        Integer[] bySource = new Integer[to - from];
+        for (int i = from; i < to; i++) bySource[i - from] = i;
+        Arrays.sort(bySource, Comparator.comparingInt((Integer i) -> column[i]).thenComparingInt(i -> i));
+        double[] out = new double[pairs];
+        double[] dist = null;
+        int distSource = -1;
+        for (int i : bySource) {
+            if (column[i] != distSource) {
+                if (shared != null && distSource >= 0) shared.release(distSource);
+                distSource = column[i];
+                dist = shared != null ? shared.get(distSource) : finder.distancesFrom(sources[distSource], sources);
+            }
+            for (int j = i + 1, pair = base[i - from]; j < count; j++) out[pair++] = dist[column[j]];
+        }
+        if (shared != null && distSource >= 0) shared.release(distSource);
+        return out;
+    }
+
+    // Distance rows of the sources, each searched once by the first chunk that needs it and dropped after the last
+    private final class SourceRows {
+        final ConcurrentHashMap<Integer, CompletableFuture<double[]>> rows = new ConcurrentHashMap<>();
+        final AtomicIntegerArray readers; // chunks still to read each source's row
+
+        SourceRows(int[] starts, int firstChunk) {
+            int[] counts = new int[sources.length];
+            int[] seenIn = new int[sources.length];
+            Arrays.fill(seenIn, -1);
+            for (int c = firstChunk; c + 1 < starts.length; c++) {
+                for (int i = starts[c]; i < starts[c + 1]; i++) {
+                    if (seenIn[column[i]] == c) continue;
+                    seenIn[column[i]] = c;
+                    counts[column[i]]++;
+                }
+            }
+            readers = new AtomicIntegerArray(counts);
+        }
+
+        double[] get(int source) {
+            CompletableFuture<double[]> row = new CompletableFuture<>();
+            CompletableFuture<double[]> other = rows.putIfAbsent(source, row);
+            if (other != null) return other.join();
+            try {
+                row.complete(finder.distancesFrom(sources[source], sources));
+            } catch (RuntimeException | Error e) {
+                row.completeExceptionally(e);
+                throw e;
+            }
+            return row.join();
+        }
+
+        void release(int source) {
+            if (readers.decrementAndGet(source) == 0) rows.remove(source);
+        }
+    }
+
+    private static byte[] header(Format format) throws IOException {
+        if (format == Format.BINARY) {
+            return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putInt(BINARY_MAGIC).putInt(BINARY_VERSION).array();
+        }
+        byte[] line = (HEADER + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        return format == Format.CSV_GZIP ? gzip(line) : line;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out, 64 * 1024)) {
+            gz.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static int write(FileChannel ch, byte[] bytes) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(bytes);
+        while (b.hasRemaining()) ch.write(b);
+        return bytes.length;
+    }
+
+    // Hash of everything the output depends on, so a checkpoint is only trusted for the same inputs
+    private long inputKey(Format format) {
+        long h = 0xcbf29ce484222325L;
+        h = mix(h, finder.csr().fingerprint());
+        h = mix(h, format.ordinal());
+        for (int i = 0; i < count; i++) {
+            h = mix(h, poiIds[i]);
+            h = mix(h, roadIds[i]);
+            h = mix(h, Double.doubleToLongBits(lat[i]));
+            h = mix(h, Double.doubleToLongBits(lon[i]));
+        }
+        return h;
+    }
+
+    private static long mix(long h, long v) {
+        return (h ^ v) * 0x100000001b3L;
+    }
+
+    // The data is forced to disk before the checkpoint that covers it is (atomically) replaced
+    private static void saveCheckpoint(File checkpoint, long key, int chunkRows, int chunks, long rows, long bytes,
+                                       FileChannel ch) throws IOException {
+        ch.force(false);
+        Properties p = new Properties();
+        p.setProperty("key", Long.toString(key));
+        p.setProperty("chunkRows", Integer.toString(chunkRows));
+        p.setProperty("chunks", Integer.toString(chunks));
+        p.setProperty("rows", Long.toString(rows));
+        p.setProperty("bytes", Long.toString(bytes));
+        File tmp = new File(checkpoint.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            p.store(out, "batch export progress");
+        }
+        Files.move(tmp.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Properties readCheckpoint(File checkpoint) {
+        Properties p = new Properties();
+        try (InputStream in = new FileInputStream(checkpoint)) {
+            p.load(in);
+            for (String k : new String[] { "key", "chunkRows", "chunks", "rows", "bytes" }) {
+                Long.parseLong(p.getProperty(k, ""));
+            }
+            return p;
+        } catch (IOException | NumberFormatException e) {
+            return null; // unreadable: start over
+        }
+    }
+
+    /**
+     * Growable UTF-8 line buffer with number formatting that skips java.util.Formatter.
+     * appendFixed gives the same digits as printf's %.Nf (half-up on the shortest decimal
+     * form of the double); the rare values within rounding noise of a tie, and very
+     * large ones, take the exact BigDecimal route.
+     */
+    static final class TextBuffer {
+        private static final double[] POW10 = { 1, 10, 100, 1000, 10000, 100000, 1000000 };
+        private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+        private static final double TIE_NOISE = 1e-6;
+
+        private byte[] buf;
+        private int len;
+
+        TextBuffer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        TextBuffer append(char c) {
+            ensure(1);
+            buf[len++] = (byte) c;
+            return this;
+        }
+
+        TextBuffer append(long v) {
+            if (v < 0) {
+                if (v == Long.MIN_VALUE) return append(Long.toString(v));
+                append('-');
+                v = -v;
+            }
+            ensure(20);
+            int start = len;
+            do {
+                buf[len++] = (byte) ('0' + v % 10);
+                v /= 10;
+            } while (v != 0);
+            for (int a = start, b = len - 1; a < b; a++, b--) {
+                byte t = buf[a];
+                buf[a] = buf[b];
+                buf[b] = t;
+            }
+            return this;
+        }
+
+        TextBuffer append(String s) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            ensure(b.length);
+            System.arraycopy(b, 0, buf, len, b.length);
+            len += b.length;
+            return this;
+        }
+
+        TextBuffer appendFixed(double v, int decimals) {
+            double scaled = v * POW10[decimals];
+            double frac = scaled - Math.floor(scaled);
+            // the shortest decimal form and the product are each within an ulp or so of scaled
+            if (!(v >= 0) || scaled >= 1e15 || Math.abs(frac - 0.5) < TIE_NOISE + 4 * Math.ulp(scaled)) {
+                return append(slowFixed(v, decimals));
+            }
+            long r = (long) Math.floor(scaled + 0.5);
+            long unit = (long) POW10[decimals];
+            append(r / unit);
+            if (decimals > 0) {
+                append('.');
+                long f = r % unit;
+                ensure(decimals);
+                for (int d = decimals - 1; d >= 0; d--) {
+                    buf[len + d] = (byte) ('0' + f % 10);
+                    f /= 10;
+                }
+                len += decimals;
+            }
+            return this;
+        }
+
+        private static String slowFixed(double v, int decimals) {
+            if (Double.isNaN(v) || Double.isInfinite(v)) return String.format(Locale.US, "%." + decimals + "f", v);
+            return new BigDecimal(Double.toString(v)).setScale(decimals, RoundingMode.HALF_UP).toPlainString();
+        }
+
+        TextBuffer newLine() {
+            ensure(NEWLINE.length);
+            System.arraycopy(NEWLINE, 0, buf, len, NEWLINE.length);
+            len += NEWLINE.length;
+            return this;
+        }
+
+        private void ensure(int extra) {
+            if (len + extra > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, len);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package ug.campus;
+
+import java.util.*;
+
+/**
+ * A road graph with its chains of degree-2 shape points collapsed.
+ * build_road_graph.py emits a node for every LineString vertex, so most road
+ * nodes only continue a street. This graph keeps the other nodes (junctions,
+ * dead ends, anything with parallel edges) as "core" nodes and joins them by one
+ * chain edge per maximal run of shape points. The run's CSR edge slots are kept
+ * as its polyline, so a search on the core graph expands back into the exact
+ * full-graph node path. A chain costs the sum of its slots' weights under
+ * whatever profile is searched (overlay weights included), added slot by slot in
+ * travel order: labels are then bit-identical to a search of the full graph, and
+ * ties do not resolve differently because of rounding.
+ *
+ * A shape point lies on one chain edge (one-way street) or two (one per
+ * direction). Searches may start or end on one: the source seeds the heads of its
+ * chains, and a target is reached from the tails of its chains, or directly when
+ * it lies further along a chain of the source.
+ */
+public final class ChainGraph {
+    final CsrGraph csr;
+    public final int n;          // core nodes
+    public final int m;          // chain edges
+    final int[] core;            // full index -> core index, -1 for shape points
+    final int[] node;            // core index -> full index
+    final int[] offsets;         // core index -> first chain edge leaving it (length n+1)
+    final int[] tail, head;      // chain edge -> core indices of its ends
+    final int[] start;           // chain edge -> first polyline slot (length m+1)
+    final int[] slots;           // full-graph edge slots along each chain, in travel order
+    private final int[] onChain; // shape point v -> chain edges at [2v], [2v+1] (-1 if none)
+    private final int[] position;// ... and the offset from the chain's start to v's slot
+
+    private ChainGraph(CsrGraph csr, int[] core, int[] node, int[] offsets, int[] tail, int[] head, int[] start, int[] slots,
+                       int[] onChain, int[] position) {
+        this.csr = csr;
+        this.n = node.length;
+        this.m = head.length;
+        this.core = core;
+        this.node = node;
+        this.offsets = offsets;
+        this.tail = tail;
+        this.head = head;
+        this.start = start;
+        this.slots = slots;
+        this.onChain = onChain;
+        this.position = position;
+    }
+
+    /** Collapses every chain of the graph; null when there is no shape point to collapse. */
+    public static ChainGraph of(CsrGraph g) {
+        boolean[] shape = shapePoints(g);
+        int shapes = 0;
+        for (boolean b : shape) if (b) shapes++;
+        if (shapes == 0) return null;
+        int[] core = new int[g.n];
+        int[] onChain = new int[2 * g.n], position = new int[2 * g.n];
+        Arrays.fill(onChain, -1);
+        int[] tail = new int[16], head = new int[16], start = new int[17], slots = new int[g.m];
+        int chains = 0, used = 0;
+        // cycles made only of shape points have no core node to start from: promote one node each
+        boolean[] walked = new boolean[g.n];
+        for (int u = 0; u < g.n; u++) {
+            if (!shape[u] || walked[u]) continue;
+            walked[u] = true;
+            int prev = u, v = g.targets[g.offsets[u]];
+            while (shape[v] && v != u && !walked[v]) {
+                walked[v] = true;
+                int next = g.targets[onward(g, v, prev)];
+                prev = v;
+                v = next;
+            }
+            if (v == u) shape[u] = false;
+        }
+        int n = 0;
+        for (int u = 0; u < g.n; u++) core[u] = shape[u] ? -1 : n++;
+        int[] node = new int[n];
+        int[] offsets = new int[n + 1];
+        for (int u = 0; u < g.n; u++) {
+            if (shape[u]) continue;
+            int cu = core[u];
+            node[cu] = u;
+            for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                if (chains == tail.length) {
+                    tail = Arrays.copyOf(tail, chains * 2);
+                    head = Arrays.copyOf(head, chains * 2);
+                    start = Arrays.copyOf(start, chains * 2 + 1);
+                }
+                // follow the run: a shape point has exactly one way on that does not turn back
+                int prev = u, slot = e;
+                start[chains] = used;
+                while (true) {
+                    slots[used++] = slot;
+                    int v = g.targets[slot];
+                    if (!shape[v]) break;
+                    int k = onChain[2 * v] < 0 ? 0 : 1;
+                    onChain[2 * v + k] = chains;
+                    position[2 * v + k] = used - start[chains];
+                    slot = onward(g, v, prev);
+                    prev = v;
+                }
+                tail[chains] = cu;
+                head[chains] = core[g.targets[slot]];
+                chains++;
+            }
+            offsets[cu + 1] = chains;
+        }
+        start[chains] = used;
+        return new ChainGraph(g, core, node, offsets, Arrays.copyOf(tail, chains), Arrays.copyOf(head, chains),
+                Arrays.copyOf(start, chains + 1), slots, onChain, position);
+    }
+
+    /*
+     * A shape point has two distinct neighbours a, b (neither itself) and either
+     * exactly the four slots a<->v<->b, or exactly the two slots a->v->b. Anything
+     * else (junction, dead end, parallel edges, direction change) stays a core node,
+     * so each chain edge stands for exactly one full-graph path.
+     */
+    private static boolean[] shapePoints(CsrGraph g) {
+        int[] in = new int[g.n], inFrom = new int[g.n];
+        Arrays.fill(inFrom, -1);
+        boolean[] mixed = new boolean[g.n]; // in-edges from more than two nodes, or a repeat
+        int[] inOther = new int[g.n];
+        Arrays.fill(inOther, -1);
+        for (int u = 0; u < g.n; u++) {
+            for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                int v = g.targets[e];
+                if (++in[v] > 2) mixed[v] = true;
+                else if (inFrom[v] < 0) inFrom[v] = u;
+                else if (inFrom[v] == u) mixed[v] = true;
+                else inOther[v] = u;
+            }
+        }
+        boolean[] shape = new boolean[g.n];
+        for (int v = 0; v < g.n; v++) {
+            int out = g.degree(v);
+            if (mixed[v] || out == 0 || out > 2 || in[v] != out) continue;
+            int a = g.targets[g.offsets[v]];
+            if (out == 1) {
+                // one-way run a' -> v -> a
+                shape[v] = inFrom[v] != v && a != v && inFrom[v] != a;
+            } else {
+                int b = g.targets[g.offsets[v] + 1];
+                shape[v] = a != b && a != v && b != v
+                        && ((inFrom[v] == a && inOther[v] == b) || (inFrom[v] == b && inOther[v] == a));
+            }
+        }
+        return shape;
+    }
+
+    // The slot leaving shape point v that does not lead back to prev
+    private static int onward(CsrGraph g, int v, int prev) {
+        int e = g.offsets[v];
+        return g.degree(v) == 1 || g.targets[e] != prev ? e : e + 1;
+    }
+
+    /** Core node count, chain edge count and the share of nodes the searches skip. */
+    public String summary() {
+        return String.format(Locale.US, "Chains: %d of %d road nodes are junctions or ends (%.1f%%), %d chain edges replace %d edge slots",
+                n, csr.n, 100.0 * n / csr.n, m, csr.m);
+    }
+
+    /*
+     * Dijkstra over the core graph from full index s until every target (full
+     * indices, -1 ignored) can be read with cost(). Labels are per core index; a
+     * label's predecessor is the chain edge it was reached by, -1 at the source,
+     * or -2-c when reached from a source lying on chain c.
+     */
+    void search(double[] weight, int s, int[] targets, SearchContext ctx) {
+        ctx.reset();
+        boolean[] isTarget = new boolean[n];
+        int remaining = 0;
+        for (int t : targets) {
+            if (t < 0) continue;
+            if (core[t] >= 0) {
+                remaining += mark(isTarget, core[t]);
+            } else {
+                for (int k = 0; k < 2; k++) {
+                    int c = onChain[2 * t + k];
+                    if (c >= 0) remaining += mark(isTarget, tail[c]);
+                }
+            }
+        }
+        IndexedHeap heap = ctx.heap;
+        if (core[s] >= 0) {
+            ctx.set(core[s], 0.0, -1);
+            heap.insertOrDecrease(core[s], 0.0);
+        } else {
+            for (int k = 0; k < 2; k++) {
+                int c = onChain[2 * s + k];
+                if (c < 0) continue;
+                double d = 0;
+                for (int i = start[c] + position[2 * s + k]; i < start[c + 1]; i++) d += weight[slots[i]];
+                if (d < ctx.dist(head[c])) {
+                    ctx.set(head[c], d, -2 - c);
+                    heap.insertOrDecrease(head[c], d);
+                }
+            }
+        }
+        while (!heap.isEmpty() && remaining > 0) {
+            int u = heap.pollMin();
+            ctx.settled++;
+            if (isTarget[u]) remaining--;
+            double du = ctx.dist(u);
+            for (int c = offsets[u]; c < offsets[u + 1]; c++) {
+                int v = head[c];
+                double dv = ctx.dist(v), alt = du;
+                // weights are non-negative, so a partial sum already at dv cannot improve v
+                for (int i = start[c]; i < start[c + 1] && alt < dv; i++) alt += weight[slots[i]];
+                if (alt < dv) {
+                    ctx.set(v, alt, c);
+                    heap.insertOrDecrease(v, alt);
+                }
+            }
+        }
+    }
+
+    private static int mark(boolean[] isTarget, int c) {
+        if (isTarget[c]) return 0;
+        isTarget[c] = true;
+        return 1;
+    }
+
+    /** Cost from s to t after search(s, ...) covered t; +infinity when unreachable. */
+    double cost(double[] weight, SearchContext ctx, int s, int t) {
+        return arrival(weight, ctx, s, t, null);
+    }
+
+    /** The full-graph path from s to t as external ids after search(s, ...) covered t; empty when unreachable. */
+    List<Integer> path(double[] weight, SearchContext ctx, int s, int t) {
+        List<Integer> path = new ArrayList<>();
+        if (s == t) {
+            path.add(csr.ids[s]);
+            return path;
+        }
+        int[] how = new int[4];
+        if (Double.isInfinite(arrival(weight, ctx, s, t, how))) return path;
+        int via = how[0], c = how[1];
+        int end = core[t] >= 0 ? -1 : start[c] + position[2 * t + how[2]];
+        if (via < 0) {
+            // along one chain from s, without reaching a core node
+            path.add(csr.ids[s]);
+            for (int i = start[c] + position[2 * s + how[3]]; i < end; i++) path.add(csr.ids[csr.targets[slots[i]]]);
+            return path;
+        }
+        // core nodes back to the source, expanding each chain edge in reverse
+        int u = via;
+        while (true) {
+            int p = ctx.prev(u);
+            if (p == -1) {
+                path.add(csr.ids[node[u]]);
+                break;
+            }
+            int k = p >= 0 ? p : -2 - p;
+            int from = p >= 0 ? start[k] : start[k] + position[2 * s + (onChain[2 * s] == k ? 0 : 1)];
+            for (int i = start[k + 1] - 1; i >= from; i--) path.add(csr.ids[csr.targets[slots[i]]]);
+            if (p < 0) {
+                path.add(csr.ids[s]);
+                break;
+            }
+            u = tail[k];
+        }
+        Collections.reverse(path);
+        if (end >= 0) for (int i = start[c]; i < end; i++) path.add(csr.ids[csr.targets[slots[i]]]);
+        return path;
+    }
+
+    /*
+     * Cheapest cost into t. how, when given, receives {core node reached before t or
+     * -1 for a run along one chain from s, chain edge entering t (-1 if t is core),
+     * t's side of that chain, s's side for the run from s}. Sums run slot by slot in
+     * travel order, as in search().
+     */
+    private double arrival(double[] weight, SearchContext ctx, int s, int t, int[] how) {
+        if (s == t) return 0.0;
+        if (core[t] >= 0) {
+            if (how != null) set(how, core[t], -1, 0, 0);
+            return ctx.dist(core[t]);
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < 2; k++) {
+            int c = onChain[2 * t + k];
+            if (c < 0) continue;
+            int end = start[c] + position[2 * t + k];
+            double d = ctx.dist(tail[c]);
+            for (int i = start[c]; i < end; i++) d += weight[slots[i]];
+            if (d < best) {
+                best = d;
+                if (how != null) set(how, tail[c], c, k, 0);
+            }
+            // s further back on the same chain
+            for (int j = 0; j < 2 && core[s] < 0; j++) {
+                if (onChain[2 * s + j] != c || position[2 * s + j] >= position[2 * t + k]) continue;
+                double direct = 0;
+                for (int i = start[c] + position[2 * s + j]; i < end; i++) direct += weight[slots[i]];
+                if (direct < best) {
+                    best = direct;
+                    if (how != null) set(how, -1, c, k, j);
+                }
+            }
+        }
+        return best;
+    }
+
+    private static void set(int[] how, int via, int chain, int tSide, int sSide) {
+        how[0] = via;
+        how[1] = chain;
+        how[2] = tSide;
+        how[3] = sSide;
+    }
+}
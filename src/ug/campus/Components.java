@@ -0,0 +1,185 @@
+package ug.campus;
+
+import java.util.*;
+
+/**
+ * Connected components of a road graph, as one int label per dense node index:
+ * weakly connected components (edge direction ignored, union-find) and strongly
+ * connected components (iterative Tarjan, no recursion on long road chains).
+ *
+ * Tarjan finishes a component only after every component reachable from it, so
+ * SCC labels are in reverse topological order: if u reaches v then
+ * strong[u] >= strong[v]. That gives an O(1) test that rejects most unreachable
+ * pairs without searching; it never rejects a reachable one. Closing roads only
+ * removes paths, so the test stays sound under a WeightOverlay.
+ */
+public final class Components {
+    public final int[] weak;    // dense index -> weakly connected component
+    public final int[] strong;  // dense index -> strongly connected component (reverse topological order)
+    public final int weakCount, strongCount;
+    public final int mainWeak, mainStrong; // largest of each (lowest label on ties)
+    private final int[] weakSize, strongSize;
+
+    private Components(int[] weak, int weakCount, int[] strong, int strongCount) {
+        this.weak = weak;
+        this.strong = strong;
+        this.weakCount = weakCount;
+        this.strongCount = strongCount;
+        this.weakSize = sizes(weak, weakCount);
+        this.strongSize = sizes(strong, strongCount);
+        this.mainWeak = largest(weakSize);
+        this.mainStrong = largest(strongSize);
+    }
+
+    public static Components of(CsrGraph g) {
+        int[] weak = new int[g.n];
+        int weakCount = weak(g, weak);
+        int[] strong = new int[g.n];
+        int strongCount = strong(g, strong);
+        return new Components(weak, weakCount, strong, strongCount);
+    }
+
+    /** True when there is certainly no path from u to v (dense indices). */
+    public boolean unreachable(int u, int v) {
+        return weak[u] != weak[v] || strong[u] < strong[v];
+    }
+
+    /** True when u and v reach each other. */
+    public boolean connected(int u, int v) {
+        return strong[u] == strong[v];
+    }
+
+    public int weakSize(int component) {
+        return weakSize[component];
+    }
+
+    public int strongSize(int component) {
+        return strongSize[component];
+    }
+
+    /** Per dense index: whether the node is in the largest strongly connected component. */
+    public boolean[] inMainComponent() {
+        boolean[] in = new boolean[strong.length];
+        for (int i = 0; i < in.length; i++) in[i] = strong[i] == mainStrong;
+        return in;
+    }
+
+    // Union-find over the edges, labels numbered in order of their lowest index
+    private static int weak(CsrGraph g, int[] label) {
+        int[] parent = new int[g.n];
+        for (int i = 0; i < g.n; i++) parent[i] = i;
+        for (int u = 0; u < g.n; u++) {
+            for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                int a = find(parent, u), b = find(parent, g.targets[e]);
+                if (a != b) parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+        int count = 0;
+        for (int i = 0; i < g.n; i++) {
+            int r = find(parent, i);
+            label[i] = r == i ? count++ : label[r]; // roots are the lowest index of their set
+        }
+        return count;
+    }
+
+    private static int find(int[] parent, int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    // Tarjan with an explicit call stack; next[u] is the next edge slot of u to look at
+    private static int strong(CsrGraph g, int[] label) {
+        int n = g.n;
+        int[] index = new int[n], low = new int[n], next = new int[n];
+        int[] call = new int[n], stack = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(index, -1);
+        int counter = 0, count = 0, sp = 0, top = 0;
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) continue;
+            index[root] = low[root] = counter++;
+            next[root] = g.offsets[root];
+            stack[top++] = root;
+            onStack[root] = true;
+            call[sp++] = root;
+            while (sp > 0) {
+                int u = call[sp - 1];
+                if (next[u] < g.offsets[u + 1]) {
+                    int v = g.targets[next[u]++];
+                    if (index[v] < 0) {
+                        index[v] = low[v] = counter++;
+                        next[v] = g.offsets[v];
+                        stack[top++] = v;
+                        onStack[v] = true;
+                        call[sp++] = v;
+                    } else if (onStack[v]) {
+                        low[u] = Math.min(low[u], index[v]);
+                    }
+                    continue;
+                }
+                sp--;
+                if (low[u] == index[u]) {
+                    int w;
+                    do {
+                        w = stack[--top];
+                        onStack[w] = false;
+                        label[w] = count;
+                    } while (w != u);
+                    count++;
+                }
+                if (sp > 0) {
+                    int p = call[sp - 1];
+                    low[p] = Math.min(low[p], low[u]);
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int[] sizes(int[] label, int count) {
+        int[] size = new int[count];
+        for (int c : label) size[c]++;
+        return size;
+    }
+
+    private static int largest(int[] size) {
+        int best = -1;
+        for (int c = 0; c < size.length; c++) if (best < 0 || size[c] > size[best]) best = c;
+        return best;
+    }
+
+    /** Fragmentation report: component counts, main component shares and a size histogram. */
+    public String summary() {
+        int n = weak.length;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "Nodes: %d%n", n));
+        if (n == 0) return sb.toString();
+        sb.append(String.format(Locale.US, "Weak components: %d, largest %d nodes (%.1f%%)%n",
+                weakCount, weakSize[mainWeak], 100.0 * weakSize[mainWeak] / n));
+        sb.append(String.format(Locale.US, "Strong components: %d, largest %d nodes (%.1f%%)%n",
+                strongCount, strongSize[mainStrong], 100.0 * strongSize[mainStrong] / n));
+        sb.append(histogram("Weak component sizes", weakSize));
+        sb.append(histogram("Strong component sizes", strongSize));
+        return sb.toString();
+    }
+
+    private static String histogram(String title, int[] size) {
+        int[] limits = { 1, 9, 99, 999 };
+        String[] names = { "1", "2-9", "10-99", "100-999", "1000+" };
+        int[] comps = new int[names.length], nodes = new int[names.length];
+        for (int s : size) {
+            int b = 0;
+            while (b < limits.length && s > limits[b]) b++;
+            comps[b]++;
+            nodes[b] += s;
+        }
+        StringBuilder sb = new StringBuilder(title).append(':');
+        for (int b = 0; b < names.length; b++) {
+            if (comps[b] > 0) sb.append(String.format(Locale.US, "  %s: %d (%d nodes)", names[b], comps[b], nodes[b]));
+        }
+        return sb.append(System.lineSeparator()).toString();
+    }
+}
@@ -1,78 +1,60 @@
 package ug.campus;
 
-import java.io.*;
 import java.util.*;
 
+/**
+ * Fragmentation report for the road graph written by build_road_graph.py, plus a
+ * connectivity check for one pair of places.
+ *
+ *   java ug.campus.ConnectivityTest [mode] [from name] [to name]
+ */
 public class ConnectivityTest {
     public static void main(String[] args) throws Exception {
-        Graph graph = new Graph();
-        loadNodes(graph, "data/nodes.csv");
-        loadEdges(graph, "data/edges.csv");
-        
-        int ecobank = findNodeId(graph, "Ecobank");
-        int balme = findNodeId(graph, "Balme Library");
-        
-        System.out.println("Testing connectivity from Ecobank (" + ecobank + ") to Balme Library (" + balme + ")");
-        
-        boolean connected = bfs(graph, ecobank, balme);
-        System.out.println("Connected: " + connected);
-        
-        if (connected) {
-            System.out.println("Path exists but routing algorithm has bugs.");
-        } else {
-            System.out.println("No path exists - graph is disconnected.");
+        String mode = args.length > 0 ? args[0] : "drive";
+        GraphSnapshot data = Main.loadRoadData(mode);
+        if (data == null) return;
+        CsrGraph road = data.road;
+        Graph pois = data.pois;
+        Components c = Components.of(road);
+        System.out.print(c.summary());
+
+        // POIs whose nearest road node is off the main component
+        Map<Integer, Integer> anySnap = Main.snapPOIs(pois, SpatialIndex.of(road), Main.SNAP_METERS);
+        Map<Integer, Integer> mainSnap = Main.snapToMainComponent(pois, road, c, Main.SNAP_METERS);
+        List<Node> stranded = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> e : anySnap.entrySet()) {
+            if (c.strong[road.indexOf(e.getValue())] != c.mainStrong) stranded.add(pois.nodes.get(e.getKey()));
         }
-    }
-    
-    static boolean bfs(Graph graph, int start, int end) {
-        Set<Integer> visited = new HashSet<>();
-        Queue<Integer> queue = new LinkedList<>();
-        queue.add(start);
-        visited.add(start);
-        
-        while (!queue.isEmpty()) {
-            int current = queue.poll();
-            if (current == end) return true;
-            
-            for (Edge edge : graph.adj.get(current)) {
-                if (!visited.contains(edge.toId)) {
-                    visited.add(edge.toId);
-                    queue.add(edge.toId);
-                }
+        stranded.sort(Comparator.comparingInt(n -> n.id));
+        System.out.printf("POIs: %d, within %.0f m of a road: %d, of the main component: %d%n",
+                pois.nodes.size(), Main.SNAP_METERS, anySnap.size(), mainSnap.size());
+        if (!stranded.isEmpty()) {
+            System.out.println("Nearest road node off the main component (" + stranded.size() + "):");
+            for (Node n : stranded.subList(0, Math.min(10, stranded.size()))) {
+                int r = road.indexOf(anySnap.get(n.id));
+                System.out.printf("  %s (id=%d) -> road node %d, component of %d nodes%n",
+                        n.name, n.id, road.ids[r], c.strongSize(c.strong[r]));
             }
         }
-        return false;
-    }
-    
-    static void loadNodes(Graph graph, String file) throws Exception {
-        BufferedReader br = new BufferedReader(new FileReader(file));
-        String line = br.readLine();
-        int nodeCounter = 1;
-        while ((line = br.readLine()) != null) {
-            String[] t = line.split(",");
-            int id = nodeCounter++;
-            String name = t[1];
-            double lat = Double.parseDouble(t[2]);
-            double lon = Double.parseDouble(t[3]);
-            String type = t[4];
-            graph.addNode(new Node(id, name, lat, lon, type));
-        }
-        br.close();
-    }
 
-    static void loadEdges(Graph graph, String file) throws Exception {
-        BufferedReader br = new BufferedReader(new FileReader(file));
-        String line = br.readLine();
-        while ((line = br.readLine()) != null) {
-            String[] t = line.split(",");
-            int fromId = Integer.parseInt(t[0]);
-            int toId = Integer.parseInt(t[1]);
-            double dist = Double.parseDouble(t[2]);
-            double speed = Double.parseDouble(t[3]);
-            boolean undirected = t[4].equals("1");
-            graph.addEdge(new Edge(fromId, toId, dist, speed, undirected));
+        String fromName = args.length > 1 ? args[1] : "Ecobank";
+        String toName = args.length > 2 ? args[2] : "Balme Library";
+        int from = findNodeId(pois, fromName), to = findNodeId(pois, toName);
+        if (from < 0 || to < 0 || !anySnap.containsKey(from) || !anySnap.containsKey(to)) {
+            System.out.println("Cannot check '" + fromName + "' -> '" + toName + "': unknown name or not near a road");
+            return;
+        }
+        int s = road.indexOf(anySnap.get(from)), t = road.indexOf(anySnap.get(to));
+        System.out.println("Testing connectivity from " + fromName + " (" + from + ") to " + toName + " (" + to + ")");
+        if (c.connected(s, t)) {
+            System.out.println("Connected: both lie in one strongly connected component.");
+        } else if (c.unreachable(s, t)) {
+            System.out.println("Not connected: no road path exists (rejected without a search).");
+        } else {
+            // same weak component, different strong ones: one-way roads decide it
+            boolean found = !new RouteFinder(road).dijkstra(road.ids[s], road.ids[t]).isEmpty();
+            System.out.println(found ? "Connected one way only (one-way roads)." : "Not connected: one-way roads lead away.");
         }
-        br.close();
     }
 
     static int findNodeId(Graph graph, String name) {
@@ -0,0 +1,399 @@
+package ug.campus;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Contraction Hierarchies over a {@link CsrGraph}.
+ *
+ * Preprocessing contracts nodes one at a time in order of importance (edge
+ * difference + contracted neighbours + level) and adds a shortcut u->w via v
+ * whenever a bounded witness search finds no path at least as short. Queries
+ * are a bidirectional Dijkstra that only follows edges towards higher-ranked
+ * nodes; shortcuts are unpacked back into original road nodes afterwards.
+ */
+public final class ContractionHierarchy {
+    private static final int MAGIC = 0x55474348; // "UGCH"
+    private static final int VERSION = 1;
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+
+    private final CsrGraph csr;
+    private final int[] rank;
+    // upward edges u->w (rank[u] < rank[w]) stored at u
+    private final int[] fwdOff, fwdTo, fwdMid;
+    private final double[] fwdW;
+    // downward edges w->u (rank[w] > rank[u]) stored reversed at u
+    private final int[] bwdOff, bwdTo, bwdMid;
+    private final double[] bwdW;
+    private final ThreadLocal<SearchContext[]> contexts;
+
+    private ContractionHierarchy(CsrGraph csr, int[] rank,
+                                 int[] fwdOff, int[] fwdTo, double[] fwdW, int[] fwdMid,
+                                 int[] bwdOff, int[] bwdTo, double[] bwdW, int[] bwdMid) {
+        this.csr = csr;
+        this.rank = rank;
+        this.fwdOff = fwdOff;
+        this.fwdTo = fwdTo;
+        this.fwdW = fwdW;
+        this.fwdMid = fwdMid;
+        this.bwdOff = bwdOff;
+        this.bwdTo = bwdTo;
+        this.bwdW = bwdW;
+        this.bwdMid = bwdMid;
+        this.contexts = ThreadLocal.withInitial(() -> new SearchContext[] { new SearchContext(csr.n), new SearchContext(csr.n) });
+    }
+
+    public int shortcutCount() {
+        int count = 0;
+        for (int mid : fwdMid) if (mid >= 0) count++;
+        for (int mid : bwdMid) if (mid >= 0) count++;
+        return count;
+    }
+
+    // --- Preprocessing ---
+
+    // Growable adjacency list used while contracting; one entry per neighbour (minimum weight kept)
+    private static final class DynAdj {
+        int[] to = new int[4];
+        double[] w = new double[4];
+        int[] mid = new int[4];
+        int size;
+
+        int find(int v) {
+            for (int i = 0; i < size; i++) if (to[i] == v) return i;
+            return -1;
+        }
+
+        void put(int v, double weight, int via) {
+            int i = find(v);
+            if (i >= 0) {
+                if (weight < w[i]) { w[i] = weight; mid[i] = via; }
+                return;
+            }
+            if (size == to.length) {
+                to = Arrays.copyOf(to, size * 2);
+                w = Arrays.copyOf(w, size * 2);
+                mid = Arrays.copyOf(mid, size * 2);
+            }
+            to[size] = v; w[size] = weight; mid[size] = via;
+            size++;
+        }
+
+        void remove(int v) {
+            int i = find(v);
+            if (i < 0) return;
+            size--;
+            to[i] = to[size]; w[i] = w[size]; mid[i] = mid[size];
+        }
+    }
+
+    public static ContractionHierarchy build(Graph graph) {
+        return build(graph.csr());
+    }
+
+    public static ContractionHierarchy build(CsrGraph csr) {
+        int n = csr.n;
+        DynAdj[] out = new DynAdj[n];
+        DynAdj[] in = new DynAdj[n];
+        for (int v = 0; v < n; v++) { out[v] = new DynAdj(); in[v] = new DynAdj(); }
+        for (int u = 0; u < n; u++) {
+            for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                int v = csr.targets[e];
+                if (v == u) continue;
+                out[u].put(v, csr.dist[e], -1);
+                in[v].put(u, csr.dist[e], -1);
+            }
+        }
+
+        SearchContext witness = new SearchContext(n);
+        boolean[] contracted = new boolean[n];
+        int[] deleted = new int[n];
+        int[] level = new int[n];
+        int[] rank = new int[n];
+        IndexedHeap order = new IndexedHeap(n);
+        for (int v = 0; v < n; v++) order.update(v, priority(v, out, in, deleted, level, witness));
+
+        // final up/down edges, recorded when each node is contracted
+        int[][] upTo = new int[n][], upMid = new int[n][], downTo = new int[n][], downMid = new int[n][];
+        double[][] upW = new double[n][], downW = new double[n][];
+
+        int next = 0;
+        while (!order.isEmpty()) {
+            int v = order.pollMin();
+            // lazy update: re-evaluate and put back if no longer the cheapest
+            double p = priority(v, out, in, deleted, level, witness);
+            if (!order.isEmpty() && p > order.minKey()) {
+                order.update(v, p);
+                continue;
+            }
+            contract(v, out, in, witness, true);
+            contracted[v] = true;
+            rank[v] = next++;
+
+            upTo[v] = Arrays.copyOf(out[v].to, out[v].size);
+            upW[v] = Arrays.copyOf(out[v].w, out[v].size);
+            upMid[v] = Arrays.copyOf(out[v].mid, out[v].size);
+            downTo[v] = Arrays.copyOf(in[v].to, in[v].size);
+            downW[v] = Arrays.copyOf(in[v].w, in[v].size);
+            downMid[v] = Arrays.copyOf(in[v].mid, in[v].size);
+
+            Set<Integer> neighbours = new HashSet<>();
+            for (int i = 0; i < out[v].size; i++) neighbours.add(out[v].to[i]);
+            for (int i = 0; i < in[v].size; i++) neighbours.add(in[v].to[i]);
+            for (int i = 0; i < out[v].size; i++) in[out[v].to[i]].remove(v);
+            for (int i = 0; i < in[v].size; i++) out[in[v].to[i]].remove(v);
+            out[v] = null;
+            in[v] = null;
+            for (int u : neighbours) {
+                deleted[u]++;
+                level[u] = Math.max(level[u], level[v] + 1);
+                order.update(u, priority(u, out, in, deleted, level, witness));
+            }
+        }
+
+        int[] fwdOff = new int[n + 1], bwdOff = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            fwdOff[v + 1] = fwdOff[v] + upTo[v].length;
+            bwdOff[v + 1] = bwdOff[v] + downTo[v].length;
+        }
+        int[] fwdTo = new int[fwdOff[n]], fwdMid = new int[fwdOff[n]];
+        double[] fwdW = new double[fwdOff[n]];
+        int[] bwdTo = new int[bwdOff[n]], bwdMid = new int[bwdOff[n]];
+        double[] bwdW = new double[bwdOff[n]];
+        for (int v = 0; v < n; v++) {
+            System.arraycopy(upTo[v], 0, fwdTo, fwdOff[v], upTo[v].length);
+            System.arraycopy(upW[v], 0, fwdW, fwdOff[v], upW[v].length);
+            System.arraycopy(upMid[v], 0, fwdMid, fwdOff[v], upMid[v].length);
+            System.arraycopy(downTo[v], 0, bwdTo, bwdOff[v], downTo[v].length);
+            System.arraycopy(downW[v], 0, bwdW, bwdOff[v], downW[v].length);
+            System.arraycopy(downMid[v], 0, bwdMid, bwdOff[v], downMid[v].length);
+        }
+        return new ContractionHierarchy(csr, rank, fwdOff, fwdTo, fwdW, fwdMid, bwdOff, bwdTo, bwdW, bwdMid);
+    }
+
+    private static double priority(int v, DynAdj[] out, DynAdj[] in, int[] deleted, int[] level, SearchContext witness) {
+        int shortcuts = contract(v, out, in, witness, false);
+        int edgeDifference = shortcuts - out[v].size - in[v].size;
+        return 2.0 * edgeDifference + deleted[v] + level[v];
+    }
+
+    // Adds (or, when simulating, counts) the shortcuts needed to remove v
+    private static int contract(int v, DynAdj[] out, DynAdj[] in, SearchContext witness, boolean apply) {
+        DynAdj vin = in[v], vout = out[v];
+        double maxOut = 0;
+        for (int j = 0; j < vout.size; j++) maxOut = Math.max(maxOut, vout.w[j]);
+        int shortcuts = 0;
+        for (int i = 0; i < vin.size; i++) {
+            int u = vin.to[i];
+            double wu = vin.w[i];
+            witnessSearch(u, v, wu + maxOut, out, witness);
+            for (int j = 0; j < vout.size; j++) {
+                int w = vout.to[j];
+                if (w == u) continue;
+                double via = wu + vout.w[j];
+                if (witness.dist(w) <= via) continue;
+                shortcuts++;
+                if (apply) {
+                    out[u].put(w, via, v);
+                    in[w].put(u, via, v);
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    // Bounded Dijkstra from u that ignores v; stops past maxDist or after a fixed number of settles
+    private static void witnessSearch(int u, int v, double maxDist, DynAdj[] out, SearchContext ctx) {
+        ctx.reset();
+        IndexedHeap heap = ctx.heap;
+        ctx.set(u, 0.0, -1);
+        heap.insertOrDecrease(u, 0.0);
+        int settled = 0;
+        while (!heap.isEmpty() && settled++ < WITNESS_SETTLE_LIMIT) {
+            if (heap.minKey() > maxDist) break;
+            int x = heap.pollMin();
+            double dx = ctx.dist(x);
+            DynAdj ax = out[x];
+            for (int i = 0; i < ax.size; i++) {
+                int y = ax.to[i];
+                if (y == v) continue;
+                double alt = dx + ax.w[i];
+                if (alt < ctx.dist(y)) {
+                    ctx.set(y, alt, x);
+                    heap.insertOrDecrease(y, alt);
+                }
+            }
+        }
+    }
+
+    // --- Queries ---
+
+    /** Shortest distance in metres between two external ids, or +infinity if unreachable. */
+    public double distance(int src, int dest) {
+        int s = csr.indexOf(src);
+        int t = csr.indexOf(dest);
+        if (s < 0 || t < 0) return Double.POSITIVE_INFINITY;
+        SearchContext[] ctx = contexts.get();
+        int meet = search(s, t, ctx[0], ctx[1]);
+        return meet < 0 ? Double.POSITIVE_INFINITY : ctx[0].dist(meet) + ctx[1].dist(meet);
+    }
+
+    /** Shortest path as external road node ids (empty if unreachable), shortcuts unpacked. */
+    public List<Integer> route(int src, int dest) {
+        List<Integer> path = new ArrayList<>();
+        int s = csr.indexOf(src);
+        int t = csr.indexOf(dest);
+        if (s < 0 || t < 0) return path;
+        SearchContext[] ctx = contexts.get();
+        SearchContext f = ctx[0], b = ctx[1];
+        int meet = search(s, t, f, b);
+        if (meet < 0) return path;
+
+        // CH-level node sequence s .. meet .. t
+        List<Integer> up = new ArrayList<>();
+        for (int u = meet; u != -1; u = f.prev(u)) up.add(u);
+        Collections.reverse(up);
+        for (int u = b.prev(meet); u != -1; u = b.prev(u)) up.add(u);
+
+        path.add(csr.ids[s]);
+        for (int i = 0; i + 1 < up.size(); i++) unpack(up.get(i), up.get(i + 1), path);
+        return path;
+    }
+
+    // Bidirectional upward search with stall-on-demand; returns the best meeting node or -1
+    private int search(int s, int t, SearchContext f, SearchContext b) {
+        f.reset();
+        b.reset();
+        f.set(s, 0.0, -1);
+        f.heap.insertOrDecrease(s, 0.0);
+        b.set(t, 0.0, -1);
+        b.heap.insertOrDecrease(t, 0.0);
+        double best = s == t ? 0.0 : Double.POSITIVE_INFINITY;
+        int meet = s == t ? s : -1;
+        while (true) {
+            double fMin = f.heap.isEmpty() ? Double.POSITIVE_INFINITY : f.heap.minKey();
+            double bMin = b.heap.isEmpty() ? Double.POSITIVE_INFINITY : b.heap.minKey();
+            if (Math.min(fMin, bMin) >= best) break;
+            boolean forward = fMin <= bMin;
+            SearchContext self = forward ? f : b, other = forward ? b : f;
+            int[] off = forward ? fwdOff : bwdOff, to = forward ? fwdTo : bwdTo;
+            double[] w = forward ? fwdW : bwdW;
+            // edges into u from higher nodes, in the direction of this search
+            int[] stallOff = forward ? bwdOff : fwdOff, stallTo = forward ? bwdTo : fwdTo;
+            double[] stallW = forward ? bwdW : fwdW;
+
+            int u = self.heap.pollMin();
+            double du = self.dist(u);
+            if (other.reached(u) && du + other.dist(u) < best) {
+                best = du + other.dist(u);
+                meet = u;
+            }
+            boolean stalled = false;
+            for (int e = stallOff[u]; e < stallOff[u + 1]; e++) {
+                if (self.dist(stallTo[e]) + stallW[e] < du) { stalled = true; break; }
+            }
+            if (stalled) continue;
+            for (int e = off[u]; e < off[u + 1]; e++) {
+                int v = to[e];
+                double alt = du + w[e];
+                if (alt < self.dist(v)) {
+                    self.set(v, alt, u);
+                    self.heap.insertOrDecrease(v, alt);
+                }
+            }
+        }
+        return meet;
+    }
+
+    // Appends the original nodes of CH edge a->b (excluding a) to path
+    private void unpack(int a, int b, List<Integer> path) {
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[] { a, b });
+        while (!stack.isEmpty()) {
+            int[] seg = stack.pop();
+            int mid = middleOf(seg[0], seg[1]);
+            if (mid < 0) {
+                path.add(csr.ids[seg[1]]);
+            } else {
+                stack.push(new int[] { mid, seg[1] });
+                stack.push(new int[] { seg[0], mid });
+            }
+        }
+    }
+
+    private int middleOf(int a, int b) {
+        if (rank[a] < rank[b]) {
+            for (int e = fwdOff[a]; e < fwdOff[a + 1]; e++) if (fwdTo[e] == b) return fwdMid[e];
+        } else {
+            for (int e = bwdOff[b]; e < bwdOff[b + 1]; e++) if (bwdTo[e] == a) return bwdMid[e];
+        }
+        throw new IllegalStateException("No CH edge " + csr.ids[a] + "->" + csr.ids[b]);
+    }
+
+    // --- Persistence ---
+
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(csr.fingerprint());
+            writeInts(out, rank);
+            writeInts(out, fwdOff); writeInts(out, fwdTo); writeDoubles(out, fwdW); writeInts(out, fwdMid);
+            writeInts(out, bwdOff); writeInts(out, bwdTo); writeDoubles(out, bwdW); writeInts(out, bwdMid);
+        }
+    }
+
+    /** Loads a saved hierarchy; fails if it was built for a different graph. */
+    public static ContractionHierarchy load(File file, CsrGraph csr) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a contraction hierarchy file: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported CH version " + version + " in " + file);
+            if (in.readLong() != csr.fingerprint()) throw new IOException("CH file " + file + " was built for a different graph");
+            int[] rank = readInts(in);
+            int[] fwdOff = readInts(in), fwdTo = readInts(in);
+            double[] fwdW = readDoubles(in);
+            int[] fwdMid = readInts(in);
+            int[] bwdOff = readInts(in), bwdTo = readInts(in);
+            double[] bwdW = readDoubles(in);
+            int[] bwdMid = readInts(in);
+            return new ContractionHierarchy(csr, rank, fwdOff, fwdTo, fwdW, fwdMid, bwdOff, bwdTo, bwdW, bwdMid);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] a) throws IOException {
+        out.writeInt(a.length);
+        for (int x : a) out.writeInt(x);
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] a) throws IOException {
+        out.writeInt(a.length);
+        for (double x : a) out.writeDouble(x);
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] a = new int[in.readInt()];
+        for (int i = 0; i < a.length; i++) a[i] = in.readInt();
+        return a;
+    }
+
+    private static double[] readDoubles(DataInputStream in) throws IOException {
+        double[] a = new double[in.readInt()];
+        for (int i = 0; i < a.length; i++) a[i] = in.readDouble();
+        return a;
+    }
+
+    /** Preprocesses the drive graph and writes data/road_drive.ch */
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "drive";
+        // loaded like Main loads it, so the node order and with it the fingerprint match
+        CsrGraph csr = RoadGraphLoader.loadCsr("data/road_" + mode + "_nodes.csv", "data/road_" + mode + "_edges.csv");
+        long t0 = System.nanoTime();
+        ContractionHierarchy ch = build(csr);
+        long t1 = System.nanoTime();
+        File out = new File("data/road_" + mode + ".ch");
+        ch.save(out);
+        System.out.printf("Built CH for %d nodes, %d edges: %d shortcuts in %.1f ms -> %s\n",
+                csr.n, csr.m, ch.shortcutCount(), (t1 - t0) / 1e6, out.getPath());
+    }
+}
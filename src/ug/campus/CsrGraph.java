@@ -0,0 +1,387 @@
+package ug.campus;
+
+import java.util.*;
+
+/**
+ * Immutable compressed-sparse-row (CSR) form of a {@link Graph}.
+ * Nodes are renumbered to dense indices 0..n-1 (ascending external id, or a
+ * locality order, see {@link NodeOrder}); the outgoing edges of index u live in
+ * slots offsets[u] .. offsets[u+1]-1.
+ */
+public final class CsrGraph {
+    public final int n;
+    public final int m;
+    public final int[] ids;       // dense index -> external CSV id
+    public final double[] lat;
+    public final double[] lon;
+    public final int[] offsets;   // length n+1
+    public final int[] targets;   // edge slot -> target index
+    public final double[] dist;   // edge slot -> metres
+    public final float[] speed;   // edge slot -> km/h
+    // edge slot -> index into highwayClasses (0 = not given); null when no edge has a class
+    private final byte[] highway;
+    private final String[] highwayClasses;
+
+    // external id -> index; dense table when ids are compact, hash map otherwise
+    private final int[] denseIndex;
+    private final Map<Integer, Integer> sparseIndex;
+    private volatile CsrGraph reversed;
+    // set on a reversed() graph: the forward edge slot each of its slots was flipped from
+    int[] forwardSlot;
+
+    private CsrGraph(int[] ids, double[] lat, double[] lon, int[] offsets, int[] targets, double[] dist, float[] speed,
+                     byte[] highway, String[] highwayClasses) {
+        this.n = ids.length;
+        this.m = targets.length;
+        this.ids = ids;
+        this.lat = lat;
+        this.lon = lon;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.dist = dist;
+        this.speed = speed;
+        this.highway = highway;
+        this.highwayClasses = highwayClasses;
+        int maxId = -1;
+        boolean nonNegative = true;
+        for (int id : ids) {
+            if (id < 0) nonNegative = false;
+            maxId = Math.max(maxId, id);
+        }
+        if (nonNegative && maxId <= 4L * n + 1024) {
+            denseIndex = new int[maxId + 1];
+            Arrays.fill(denseIndex, -1);
+            for (int i = 0; i < n; i++) denseIndex[ids[i]] = i;
+            sparseIndex = null;
+        } else {
+            denseIndex = null;
+            sparseIndex = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) sparseIndex.put(ids[i], i);
+        }
+    }
+
+    /** Wraps existing CSR arrays (e.g. read from a snapshot); ids must be distinct. */
+    public static CsrGraph of(int[] ids, double[] lat, double[] lon, int[] offsets, int[] targets, double[] dist, float[] speed) {
+        return of(ids, lat, lon, offsets, targets, dist, speed, null, null);
+    }
+
+    /** As above with a highway class per slot: codes index classes, code 0 (class null) means none given. */
+    static CsrGraph of(int[] ids, double[] lat, double[] lon, int[] offsets, int[] targets, double[] dist, float[] speed,
+                       byte[] highway, String[] highwayClasses) {
+        int n = ids.length;
+        if (lat.length != n || lon.length != n || offsets.length != n + 1 || offsets[n] != targets.length
+                || dist.length != targets.length || speed.length != targets.length
+                || (highway != null && (highway.length != targets.length || highwayClasses == null || highwayClasses.length == 0))) {
+            throw new IllegalArgumentException("Inconsistent CSR array lengths");
+        }
+        return new CsrGraph(ids, lat, lon, offsets, targets, dist, speed, highway, highwayClasses);
+    }
+
+    // Interns highway class names as one-byte codes; code 0 is reserved for "none"
+    private static final class HighwayCodes {
+        final List<String> classes = new ArrayList<>(Collections.singletonList(null));
+        final Map<String, Byte> codes = new HashMap<>();
+
+        byte code(String highway) {
+            if (highway == null || highway.isEmpty()) return 0;
+            Byte c = codes.get(highway);
+            if (c == null) {
+                if (classes.size() > 255) throw new IllegalArgumentException("More than 255 highway classes");
+                c = (byte) classes.size();
+                classes.add(highway);
+                codes.put(highway, c);
+            }
+            return c;
+        }
+
+        String[] table() {
+            return classes.size() == 1 ? null : classes.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * Accumulates nodes and edges in primitive arrays and produces a CsrGraph with
+     * the same layout as {@link #from(Graph)} would for the same input order.
+     */
+    public static final class Builder {
+        private int[] nodeIds = new int[1024];
+        private double[] nodeLat = new double[1024], nodeLon = new double[1024];
+        private int nodeCount;
+        private int[] from = new int[4096], to = new int[4096];
+        private double[] edgeDist = new double[4096];
+        private float[] edgeSpeed = new float[4096];
+        private byte[] edgeHighway = new byte[4096];
+        private final HighwayCodes highwayCodes = new HighwayCodes();
+        private int edgeCount;
+        private final Map<Integer, Integer> slotOf = new HashMap<>();
+
+        /** Adds a node; a repeated id replaces the earlier coordinates. */
+        public void addNode(int id, double lat, double lon) {
+            Integer slot = slotOf.get(id);
+            if (slot == null) {
+                if (nodeCount == nodeIds.length) {
+                    nodeIds = Arrays.copyOf(nodeIds, nodeCount * 2);
+                    nodeLat = Arrays.copyOf(nodeLat, nodeCount * 2);
+                    nodeLon = Arrays.copyOf(nodeLon, nodeCount * 2);
+                }
+                slot = nodeCount++;
+                slotOf.put(id, slot);
+                nodeIds[slot] = id;
+            }
+            nodeLat[slot] = lat;
+            nodeLon[slot] = lon;
+        }
+
+        public boolean hasNode(int id) {
+            return slotOf.containsKey(id);
+        }
+
+        /** Adds fromId->toId, and the reverse twin right after it when undirected (as Graph.addEdge does). */
+        public void addEdge(int fromId, int toId, double distanceMeters, double speedKph, boolean undirected) {
+            addEdge(fromId, toId, distanceMeters, speedKph, undirected, null);
+        }
+
+        /** As above, tagged with an OSM highway class (null for none). */
+        public void addEdge(int fromId, int toId, double distanceMeters, double speedKph, boolean undirected, String highway) {
+            byte h = highwayCodes.code(highway);
+            add(fromId, toId, distanceMeters, speedKph, h);
+            if (undirected) add(toId, fromId, distanceMeters, speedKph, h);
+        }
+
+        private void add(int a, int b, double d, double sp, byte h) {
+            if (edgeCount == from.length) {
+                from = Arrays.copyOf(from, edgeCount * 2);
+                to = Arrays.copyOf(to, edgeCount * 2);
+                edgeDist = Arrays.copyOf(edgeDist, edgeCount * 2);
+                edgeSpeed = Arrays.copyOf(edgeSpeed, edgeCount * 2);
+                edgeHighway = Arrays.copyOf(edgeHighway, edgeCount * 2);
+            }
+            from[edgeCount] = a;
+            to[edgeCount] = b;
+            edgeDist[edgeCount] = d;
+            edgeSpeed[edgeCount] = (float) sp;
+            edgeHighway[edgeCount] = h;
+            edgeCount++;
+        }
+
+        public CsrGraph build() {
+            int n = nodeCount;
+            // dense index = rank of the id among all ids
+            long[] order = new long[n];
+            for (int i = 0; i < n; i++) order[i] = ((long) nodeIds[i] << 32) | i;
+            Arrays.sort(order);
+            int[] ids = new int[n];
+            int[] indexOfSlot = new int[n];
+            double[] lat = new double[n], lon = new double[n];
+            for (int k = 0; k < n; k++) {
+                int slot = (int) order[k];
+                ids[k] = nodeIds[slot];
+                indexOfSlot[slot] = k;
+                lat[k] = nodeLat[slot];
+                lon[k] = nodeLon[slot];
+            }
+            // stable counting sort of edges by source keeps per-node file order
+            int[] src = new int[edgeCount], dst = new int[edgeCount];
+            int[] offsets = new int[n + 1];
+            int kept = 0;
+            for (int e = 0; e < edgeCount; e++) {
+                Integer a = slotOf.get(from[e]), b = slotOf.get(to[e]);
+                if (a == null || b == null) { src[e] = -1; continue; }
+                src[e] = indexOfSlot[a];
+                dst[e] = indexOfSlot[b];
+                offsets[src[e] + 1]++;
+                kept++;
+            }
+            for (int i = 0; i < n; i++) offsets[i + 1] += offsets[i];
+            int[] fill = Arrays.copyOf(offsets, n);
+            int[] targets = new int[kept];
+            double[] dist = new double[kept];
+            float[] speed = new float[kept];
+            String[] classes = highwayCodes.table();
+            byte[] highway = classes == null ? null : new byte[kept];
+            for (int e = 0; e < edgeCount; e++) {
+                if (src[e] < 0) continue;
+                int slot = fill[src[e]]++;
+                targets[slot] = dst[e];
+                dist[slot] = edgeDist[e];
+                speed[slot] = edgeSpeed[e];
+                if (highway != null) highway[slot] = edgeHighway[e];
+            }
+            return new CsrGraph(ids, lat, lon, offsets, targets, dist, speed, highway, classes);
+        }
+    }
+
+    /** Builds the CSR arrays from the node map and adjacency lists of a graph. */
+    public static CsrGraph from(Graph graph) {
+        int[] ids = new int[graph.nodes.size()];
+        int k = 0;
+        for (int id : graph.nodes.keySet()) ids[k++] = id;
+        Arrays.sort(ids);
+        int n = ids.length;
+        Map<Integer, Integer> index = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) index.put(ids[i], i);
+
+        double[] lat = new double[n];
+        double[] lon = new double[n];
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            Node node = graph.nodes.get(ids[i]);
+            lat[i] = node.lat;
+            lon[i] = node.lon;
+            int deg = 0;
+            List<Edge> edges = graph.adj.get(ids[i]);
+            if (edges != null) {
+                for (Edge e : edges) if (index.containsKey(e.toId)) deg++;
+            }
+            offsets[i + 1] = offsets[i] + deg;
+        }
+        int m = offsets[n];
+        int[] targets = new int[m];
+        double[] dist = new double[m];
+        float[] speed = new float[m];
+        HighwayCodes codes = new HighwayCodes();
+        byte[] highway = new byte[m];
+        for (int i = 0; i < n; i++) {
+            List<Edge> edges = graph.adj.get(ids[i]);
+            if (edges == null) continue;
+            int slot = offsets[i];
+            for (Edge e : edges) {
+                Integer t = index.get(e.toId);
+                if (t == null) continue;
+                targets[slot] = t;
+                dist[slot] = e.distanceMeters;
+                speed[slot] = (float) e.speedKph;
+                highway[slot] = codes.code(e.highway);
+                slot++;
+            }
+        }
+        String[] classes = codes.table();
+        return new CsrGraph(ids, lat, lon, offsets, targets, dist, speed, classes == null ? null : highway, classes);
+    }
+
+    /**
+     * The same graph with old dense index order[k] moved to index k. Ids, coordinates
+     * and each node's edges (in their slot order) move along.
+     */
+    public CsrGraph renumbered(int[] order) {
+        if (order.length != n) throw new IllegalArgumentException("Order has " + order.length + " entries for " + n + " nodes");
+        int[] index = new int[n];
+        Arrays.fill(index, -1);
+        for (int k = 0; k < n; k++) {
+            int u = order[k];
+            if (u < 0 || u >= n || index[u] >= 0) throw new IllegalArgumentException("Order is not a permutation at " + k);
+            index[u] = k;
+        }
+        int[] rIds = new int[n], rOffsets = new int[n + 1], rTargets = new int[m];
+        double[] rLat = new double[n], rLon = new double[n], rDist = new double[m];
+        float[] rSpeed = new float[m];
+        byte[] rHighway = highway == null ? null : new byte[m];
+        int slot = 0;
+        for (int k = 0; k < n; k++) {
+            int u = order[k];
+            rIds[k] = ids[u];
+            rLat[k] = lat[u];
+            rLon[k] = lon[u];
+            for (int e = offsets[u]; e < offsets[u + 1]; e++, slot++) {
+                rTargets[slot] = index[targets[e]];
+                rDist[slot] = dist[e];
+                rSpeed[slot] = speed[e];
+                if (rHighway != null) rHighway[slot] = highway[e];
+            }
+            rOffsets[k + 1] = slot;
+        }
+        return new CsrGraph(rIds, rLat, rLon, rOffsets, rTargets, rDist, rSpeed, rHighway, highwayClasses);
+    }
+
+    /** Same nodes with every edge u->v turned into v->u; built once and cached. */
+    public CsrGraph reversed() {
+        CsrGraph r = reversed;
+        if (r == null) {
+            int[] rOffsets = new int[n + 1];
+            for (int e = 0; e < m; e++) rOffsets[targets[e] + 1]++;
+            for (int i = 0; i < n; i++) rOffsets[i + 1] += rOffsets[i];
+            int[] fill = Arrays.copyOf(rOffsets, n);
+            int[] rTargets = new int[m];
+            double[] rDist = new double[m];
+            float[] rSpeed = new float[m];
+            byte[] rHighway = highway == null ? null : new byte[m];
+            int[] rOrigin = new int[m];
+            for (int u = 0; u < n; u++) {
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int slot = fill[targets[e]]++;
+                    rTargets[slot] = u;
+                    rDist[slot] = dist[e];
+                    rSpeed[slot] = speed[e];
+                    if (rHighway != null) rHighway[slot] = highway[e];
+                    rOrigin[slot] = e;
+                }
+            }
+            r = new CsrGraph(ids, lat, lon, rOffsets, rTargets, rDist, rSpeed, rHighway, highwayClasses);
+            r.reversed = this;
+            r.forwardSlot = rOrigin;
+            reversed = r;
+        }
+        return r;
+    }
+
+    /** Dense index of an external node id, or -1 if the id is not in the graph. */
+    public int indexOf(int id) {
+        if (denseIndex != null) return id >= 0 && id < denseIndex.length ? denseIndex[id] : -1;
+        Integer i = sparseIndex.get(id);
+        return i == null ? -1 : i;
+    }
+
+    public int idOf(int index) {
+        return ids[index];
+    }
+
+    public int degree(int u) {
+        return offsets[u + 1] - offsets[u];
+    }
+
+    /** Slot of the shortest edge u->v, or -1 if there is none. */
+    public int edgeBetween(int u, int v) {
+        int best = -1;
+        for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+            if (targets[e] == v && (best == -1 || dist[e] < dist[best])) best = e;
+        }
+        return best;
+    }
+
+    /** OSM highway class of an edge slot (e.g. "residential"), or null if the edges file gave none. */
+    public String highway(int e) {
+        return highway == null ? null : highwayClasses[highway[e] & 0xff];
+    }
+
+    // Raw class codes and their names for the snapshot writer; both null when there are no classes
+    byte[] highwayCodes() {
+        return highway;
+    }
+
+    String[] highwayClasses() {
+        return highwayClasses;
+    }
+
+    /** 64-bit hash of ids, topology and distances; used to check saved artifacts still match. */
+    public long fingerprint() {
+        long h = 0xcbf29ce484222325L;
+        h = mix(h, n);
+        h = mix(h, m);
+        for (int i = 0; i < n; i++) h = mix(h, ids[i]);
+        for (int i = 0; i <= n; i++) h = mix(h, offsets[i]);
+        for (int e = 0; e < m; e++) {
+            h = mix(h, targets[e]);
+            h = mix(h, Double.doubleToLongBits(dist[e]));
+        }
+        return h;
+    }
+
+    private static long mix(long h, long v) {
+        return (h ^ v) * 0x100000001b3L;
+    }
+
+    /** Travel time of an edge slot in seconds. */
+    public double travelSeconds(int e) {
+        return dist[e] / (speed[e] * 1000.0 / 3600);
+    }
+}
@@ -0,0 +1,250 @@
+package ug.campus;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Streaming CSV reader over an NIO file channel. Rows are split in place in a
+ * byte buffer; numbers are parsed straight from the bytes and strings are only
+ * decoded when asked for. Supports quoted fields ("a, b" and "" escapes) and
+ * CRLF line endings. Callers record bad rows through {@link #malformed} so
+ * problems are reported with file and line number instead of being dropped.
+ */
+public final class CsvReader implements Closeable {
+    private static final int CHUNK = 1 << 20;
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private final String fileName;
+    private final FileChannel channel;
+    private ByteBuffer buf = ByteBuffer.allocate(CHUNK);
+    private boolean eof;
+    private int rowStart, rowEnd;     // current row within buf (rowEnd excludes the line break)
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] quoted = new boolean[16];
+    private int fields;
+    private int line;                 // 1-based line number of the current row
+    private int nextLine = 1;
+    private final List<String> problems = new ArrayList<>();
+
+    private CsvReader(String fileName, FileChannel channel) {
+        this.fileName = fileName;
+        this.channel = channel;
+        buf.limit(0);
+    }
+
+    public static CsvReader open(String file) throws IOException {
+        return new CsvReader(file, FileChannel.open(new File(file).toPath(), StandardOpenOption.READ));
+    }
+
+    /** Advances to the next non-empty row; false at end of file. */
+    public boolean next() throws IOException {
+        while (true) {
+            if (!scanRow()) return false;
+            if (rowEnd > rowStart) return true;
+        }
+    }
+
+    public int line() {
+        return line;
+    }
+
+    public int fieldCount() {
+        return fields;
+    }
+
+    /** Records a problem with the current row. */
+    public void malformed(String message) {
+        problems.add(fileName + ":" + line + ": " + message);
+    }
+
+    public List<String> problems() {
+        return problems;
+    }
+
+    /** Prints recorded problems (at most a handful) to stderr. */
+    public void reportProblems() {
+        if (problems.isEmpty()) return;
+        System.err.println("Skipped " + problems.size() + " malformed row(s) in " + fileName + ":");
+        for (int i = 0; i < Math.min(10, problems.size()); i++) System.err.println("  " + problems.get(i));
+        if (problems.size() > 10) System.err.println("  ...");
+    }
+
+    public String getString(int field) {
+        int s = starts[field], e = ends[field];
+        byte[] a = buf.array();
+        if (!quoted[field]) return new String(a, s, e - s, StandardCharsets.UTF_8);
+        // drop the surrounding quotes and collapse "" escapes
+        ByteArrayOutputStream out = new ByteArrayOutputStream(e - s);
+        for (int i = s; i < e; i++) {
+            byte c = a[i];
+            if (c == '"') {
+                if (i + 1 < e && a[i + 1] == '"') { out.write('"'); i++; }
+                continue;
+            }
+            out.write(c);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** True if the field's raw bytes equal the given ASCII text. */
+    public boolean fieldEquals(int field, String text) {
+        int s = starts[field], e = ends[field];
+        if (e - s != text.length()) return false;
+        byte[] a = buf.array();
+        for (int i = 0; i < text.length(); i++) if (a[s + i] != text.charAt(i)) return false;
+        return true;
+    }
+
+    public int getInt(int field) {
+        byte[] a = buf.array();
+        int s = trimStart(field), e = trimEnd(field);
+        if (s >= e) throw new NumberFormatException("empty field");
+        boolean neg = a[s] == '-';
+        if (neg || a[s] == '+') s++;
+        if (s >= e) throw new NumberFormatException(text(field));
+        long v = 0;
+        for (int i = s; i < e; i++) {
+            int d = a[i] - '0';
+            if (d < 0 || d > 9 || v > Integer.MAX_VALUE + 1L) throw new NumberFormatException(text(field));
+            v = v * 10 + d;
+        }
+        if (neg) v = -v;
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) throw new NumberFormatException(text(field));
+        return (int) v;
+    }
+
+    /**
+     * Parses a decimal straight from the bytes. Plain decimals with at most 15
+     * significant digits are exact as mantissa / 10^k; anything else (exponents,
+     * long mantissas, NaN) goes through Double.parseDouble, so results always
+     * match Double.parseDouble.
+     */
+    public double getDouble(int field) {
+        byte[] a = buf.array();
+        int s = trimStart(field), e = trimEnd(field);
+        if (s >= e) throw new NumberFormatException("empty field");
+        int i = s;
+        boolean neg = a[i] == '-';
+        if (neg || a[i] == '+') i++;
+        long mantissa = 0;
+        int digits = 0, fraction = 0;
+        boolean dot = false, any = false;
+        for (; i < e; i++) {
+            byte c = a[i];
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (mantissa == 0 && c == '0') {
+                    if (dot) fraction++;
+                    continue; // leading zeros are not significant
+                }
+                if (++digits > 15) return Double.parseDouble(text(field));
+                mantissa = mantissa * 10 + (c - '0');
+                if (dot) fraction++;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                return Double.parseDouble(text(field));
+            }
+        }
+        if (!any || fraction >= POW10.length) return Double.parseDouble(text(field));
+        double v = mantissa / POW10[fraction];
+        return neg ? -v : v;
+    }
+
+    private String text(int field) {
+        return getString(field).trim();
+    }
+
+    private int trimStart(int field) {
+        int s = starts[field], e = ends[field];
+        byte[] a = buf.array();
+        while (s < e && (a[s] == ' ' || a[s] == '\t' || a[s] == '"')) s++;
+        return s;
+    }
+
+    private int trimEnd(int field) {
+        int s = starts[field], e = ends[field];
+        byte[] a = buf.array();
+        while (e > s && (a[e - 1] == ' ' || a[e - 1] == '\t' || a[e - 1] == '"')) e--;
+        return e;
+    }
+
+    // Finds the next row in the buffer, refilling as needed, and splits it into fields
+    private boolean scanRow() throws IOException {
+        int pos = buf.position();
+        while (true) {
+            int lines = 0;
+            boolean inQuotes = false;
+            fields = 0;
+            int fieldStart = pos;
+            boolean fieldQuoted = false;
+            byte[] a = buf.array();
+            int limit = buf.limit();
+            int i = pos;
+            for (; i < limit; i++) {
+                byte c = a[i];
+                if (c == '"') {
+                    inQuotes = !inQuotes;
+                    fieldQuoted = true;
+                } else if (c == '\n') {
+                    lines++;
+                    if (!inQuotes) break;
+                } else if (c == ',' && !inQuotes) {
+                    addField(fieldStart, i, fieldQuoted);
+                    fieldStart = i + 1;
+                    fieldQuoted = false;
+                }
+            }
+            if (i < limit || (eof && pos < limit)) {
+                int end = i;
+                if (end > fieldStart && a[end - 1] == '\r') end--;
+                addField(fieldStart, end, fieldQuoted);
+                rowStart = pos;
+                rowEnd = end;
+                line = nextLine;
+                nextLine += i < limit ? lines : lines + 1;
+                buf.position(Math.min(limit, i + 1));
+                return true;
+            }
+            if (eof) return false;
+            // row continues past the buffer: move it to the front (growing if needed) and read more
+            buf.position(pos);
+            buf.compact();
+            if (!buf.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+                buf.flip();
+                bigger.put(buf);
+                buf = bigger;
+            }
+            if (channel.read(buf) < 0) eof = true;
+            buf.flip();
+            pos = 0;
+        }
+    }
+
+    private void addField(int s, int e, boolean isQuoted) {
+        if (fields == starts.length) {
+            starts = Arrays.copyOf(starts, fields * 2);
+            ends = Arrays.copyOf(ends, fields * 2);
+            quoted = Arrays.copyOf(quoted, fields * 2);
+        }
+        starts[fields] = s;
+        ends[fields] = e;
+        quoted[fields] = isQuoted;
+        fields++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
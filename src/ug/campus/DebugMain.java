@@ -1,13 +1,12 @@
 package ug.campus;
 
-import java.io.*;
 import java.util.*;
 
 public class DebugMain {
     public static void main(String[] args) throws Exception {
         Graph graph = new Graph();
-        loadNodes(graph, "data/nodes.csv");
-        loadEdges(graph, "data/edges.csv");
+        Main.loadNodes(graph, "data/nodes.csv");
+        Main.loadEdges(graph, "data/edges.csv");
         
         System.out.println("Graph loaded successfully!");
         System.out.println("Nodes: " + graph.nodes.size());
@@ -37,37 +36,6 @@ public class DebugMain {
         }
     }
     
-    static void loadNodes(Graph graph, String file) throws Exception {
-        BufferedReader br = new BufferedReader(new FileReader(file));
-        String line = br.readLine();
-        int nodeCounter = 1;
-        while ((line = br.readLine()) != null) {
-            String[] t = line.split(",");
-            int id = nodeCounter++;
-            String name = t[1];
-            double lat = Double.parseDouble(t[2]);
-            double lon = Double.parseDouble(t[3]);
-            String type = t[4];
-            graph.addNode(new Node(id, name, lat, lon, type));
-        }
-        br.close();
-    }
-
-    static void loadEdges(Graph graph, String file) throws Exception {
-        BufferedReader br = new BufferedReader(new FileReader(file));
-        String line = br.readLine();
-        while ((line = br.readLine()) != null) {
-            String[] t = line.split(",");
-            int fromId = Integer.parseInt(t[0]);
-            int toId = Integer.parseInt(t[1]);
-            double dist = Double.parseDouble(t[2]);
-            double speed = Double.parseDouble(t[3]);
-            boolean undirected = t[4].equals("1");
-            graph.addEdge(new Edge(fromId, toId, dist, speed, undirected));
-        }
-        br.close();
-    }
-
     static int findNodeId(Graph graph, String name) {
         for (Node node : graph.nodes.values()) {
             if (node.name.equalsIgnoreCase(name)) return node.id;
@@ -0,0 +1,34 @@
+package ug.campus;
+
+import java.util.Arrays;
+
+/** Dense sources x targets table of shortest road distances (metres, +infinity when unreachable). */
+public final class DistanceMatrix {
+    public final int[] sources; // external ids, row order
+    public final int[] targets; // external ids, column order
+    private final double[] values;
+
+    DistanceMatrix(int[] sources, int[] targets) {
+        this.sources = sources;
+        this.targets = targets;
+        this.values = new double[sources.length * targets.length];
+        Arrays.fill(values, Double.POSITIVE_INFINITY);
+    }
+
+    public int rows() {
+        return sources.length;
+    }
+
+    public int cols() {
+        return targets.length;
+    }
+
+    public double get(int row, int col) {
+        return values[row * targets.length + col];
+    }
+
+    // Rows are written by exactly one worker each
+    void setRow(int row, double[] dist) {
+        System.arraycopy(dist, 0, values, row * targets.length, targets.length);
+    }
+}
@@ -3,15 +3,21 @@ package ug.campus;
 public class Edge {
     public final int fromId;
     public final int toId;
-    public double distanceMeters;
+    public final double distanceMeters;
     public final double speedKph;
     public final boolean undirected;
+    public final String highway; // OSM highway class, or null
 
     public Edge(int fromId, int toId, double distanceMeters, double speedKph, boolean undirected) {
+        this(fromId, toId, distanceMeters, speedKph, undirected, null);
+    }
+
+    public Edge(int fromId, int toId, double distanceMeters, double speedKph, boolean undirected, String highway) {
         this.fromId = fromId;
         this.toId = toId;
         this.distanceMeters = distanceMeters;
         this.speedKph = speedKph;
         this.undirected = undirected;
+        this.highway = highway;
     }
 }
@@ -0,0 +1,188 @@
+package ug.campus;
+
+import java.util.*;
+
+/** Cross-checks the faster routing engines against plain Dijkstra on every snapped POI pair. */
+public class EngineCrossCheck {
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "drive";
+        Graph graph = RoadGraphLoader.load("data/road_" + mode + "_nodes.csv", "data/road_" + mode + "_edges.csv");
+        Graph pois = new Graph();
+        Main.loadNodes(pois, "data/nodes.csv");
+        Map<Integer, Integer> snap = Main.snapPOIs(pois, graph, 200.0);
+        int[] targets = new TreeSet<>(snap.values()).stream().mapToInt(Integer::intValue).toArray();
+        System.out.println("Road nodes: " + graph.nodes.size() + ", snapped POI nodes: " + targets.length);
+
+        RouteFinder finder = new RouteFinder(graph);
+        double[][] reference = new double[targets.length][targets.length];
+        long settled = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                reference[i][j] = pathDistance(finder, finder.dijkstra(targets[i], targets[j]));
+                settled += finder.lastSettledCount();
+            }
+        }
+        report("Dijkstra", t0, targets.length, 0);
+        reportSettled("Dijkstra", settled, targets.length);
+
+        // The same search without collapsing degree-2 chains
+        ChainGraph chains = finder.chains();
+        if (chains != null) {
+            System.out.println(chains.summary());
+            finder.useChains(null);
+            int mismatches = 0;
+            settled = 0;
+            t0 = System.nanoTime();
+            for (int i = 0; i < targets.length; i++) {
+                for (int j = 0; j < targets.length; j++) {
+                    if (!same(reference[i][j], pathDistance(finder, finder.dijkstra(targets[i], targets[j])))) mismatches++;
+                    settled += finder.lastSettledCount();
+                }
+            }
+            report("Dijkstra (full graph)", t0, targets.length, mismatches);
+            reportSettled("Dijkstra (full graph)", settled, targets.length);
+            finder.useChains(chains);
+        }
+
+        // A* with the straight-line bound vs ALT with each landmark strategy
+        int mismatches = 0;
+        settled = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                if (!same(reference[i][j], pathDistance(finder, finder.aStar(targets[i], targets[j])))) mismatches++;
+                settled += finder.lastSettledCount();
+            }
+        }
+        report("A*", t0, targets.length, mismatches);
+        reportSettled("A*", settled, targets.length);
+
+        // Bidirectional searches (backward half over the reversed graph)
+        mismatches = 0;
+        settled = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                if (!same(reference[i][j], pathDistance(finder, finder.bidirectionalDijkstra(targets[i], targets[j])))) mismatches++;
+                settled += finder.lastSettledCount();
+            }
+        }
+        report("Bidir Dijkstra", t0, targets.length, mismatches);
+        reportSettled("Bidir Dijkstra", settled, targets.length);
+        mismatches = 0;
+        settled = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                if (!same(reference[i][j], pathDistance(finder, finder.bidirectionalAStar(targets[i], targets[j])))) mismatches++;
+                settled += finder.lastSettledCount();
+            }
+        }
+        report("Bidir A*", t0, targets.length, mismatches);
+        reportSettled("Bidir A*", settled, targets.length);
+        for (Landmarks.Strategy strategy : Landmarks.Strategy.values()) {
+            long l0 = System.nanoTime();
+            finder.useLandmarks(8, strategy);
+            System.out.printf("ALT %s: 8 landmarks in %.1f ms\n", strategy, (System.nanoTime() - l0) / 1e6);
+            mismatches = 0;
+            settled = 0;
+            t0 = System.nanoTime();
+            for (int i = 0; i < targets.length; i++) {
+                for (int j = 0; j < targets.length; j++) {
+                    if (!same(reference[i][j], pathDistance(finder, finder.altStar(targets[i], targets[j])))) mismatches++;
+                    settled += finder.lastSettledCount();
+                }
+            }
+            report("ALT " + strategy, t0, targets.length, mismatches);
+            reportSettled("ALT " + strategy, settled, targets.length);
+            mismatches = 0;
+            settled = 0;
+            t0 = System.nanoTime();
+            for (int i = 0; i < targets.length; i++) {
+                for (int j = 0; j < targets.length; j++) {
+                    if (!same(reference[i][j], pathDistance(finder, finder.bidirectionalAStar(targets[i], targets[j])))) mismatches++;
+                    settled += finder.lastSettledCount();
+                }
+            }
+            report("Bidir ALT " + strategy, t0, targets.length, mismatches);
+            reportSettled("Bidir ALT " + strategy, settled, targets.length);
+        }
+
+        // Fastest paths: Dijkstra vs A* with the distance / top-speed estimate on the time profile
+        Metric time = finder.metric(Metric.TIME);
+        double[][] timeReference = new double[targets.length][targets.length];
+        t0 = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                timeReference[i][j] = pathCost(finder, finder.dijkstra(targets[i], targets[j], time), time);
+            }
+        }
+        report("Dijkstra (time)", t0, targets.length, 0);
+        mismatches = 0;
+        settled = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                if (!same(timeReference[i][j], pathCost(finder, finder.aStar(targets[i], targets[j], time), time))) mismatches++;
+                settled += finder.lastSettledCount();
+            }
+        }
+        report("A* (time)", t0, targets.length, mismatches);
+        reportSettled("A* (time)", settled, targets.length);
+        mismatches = 0;
+        settled = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                if (!same(timeReference[i][j], pathCost(finder, finder.bidirectionalDijkstra(targets[i], targets[j], time), time))) mismatches++;
+                settled += finder.lastSettledCount();
+            }
+        }
+        report("Bidir Dijkstra (time)", t0, targets.length, mismatches);
+        reportSettled("Bidir Dijkstra (time)", settled, targets.length);
+
+        long b0 = System.nanoTime();
+        ContractionHierarchy ch = ContractionHierarchy.build(graph);
+        System.out.printf("CH preprocessing: %.1f ms, %d shortcuts\n", (System.nanoTime() - b0) / 1e6, ch.shortcutCount());
+        mismatches = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                if (!same(reference[i][j], ch.distance(targets[i], targets[j]))) mismatches++;
+            }
+        }
+        report("CH distance", t0, targets.length, mismatches);
+        mismatches = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                if (!same(reference[i][j], pathDistance(finder, ch.route(targets[i], targets[j])))) mismatches++;
+            }
+        }
+        report("CH route", t0, targets.length, mismatches);
+    }
+
+    // Length of a returned path, +infinity for "no path"
+    static double pathDistance(RouteFinder finder, List<Integer> path) {
+        return path.isEmpty() ? Double.POSITIVE_INFINITY : finder.totalDistance(path);
+    }
+
+    static double pathCost(RouteFinder finder, List<Integer> path, Metric metric) {
+        return path.isEmpty() ? Double.POSITIVE_INFINITY : finder.pathCost(path, metric);
+    }
+
+    static boolean same(double expected, double actual) {
+        if (Double.isInfinite(expected) || Double.isInfinite(actual)) return expected == actual;
+        return Math.abs(expected - actual) <= 1e-6 * Math.max(1.0, expected);
+    }
+
+    static void reportSettled(String engine, long settled, int k) {
+        System.out.printf("%-22s %8.1f settled nodes/query\n", engine, settled / ((double) k * k));
+    }
+
+    static void report(String engine, long startNanos, int k, int mismatches) {
+        double ms = (System.nanoTime() - startNanos) / 1e6;
+        System.out.printf("%-22s %8.1f ms total, %8.2f us/query, mismatches=%d\n", engine, ms, ms * 1000 / ((double) k * k), mismatches);
+    }
+}
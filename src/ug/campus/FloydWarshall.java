@@ -1,50 +1,158 @@
 package ug.campus;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
-public class FloydWarshall {
-    public double[][] dist;
-    public int[][] next;
-    public int n;
+/**
+ * All-pairs shortest paths by Floyd-Warshall over the dense CSR indices, so
+ * external node ids may be any sparse set.
+ *
+ * The n x n table is processed in TILE x TILE blocks: in round k the diagonal
+ * block goes first, then the blocks of its row and column (in parallel), then
+ * every other block (in parallel), each pass touching three cache-resident
+ * tiles. Distances live in one flat double or float array; successors are
+ * only kept when paths are wanted.
+ */
+public final class FloydWarshall {
+    static final int TILE = 64;
 
+    public final CsrGraph csr;
+    public final int n;
+    private final double[] d;  // null with float storage
+    private final float[] f;   // null with double storage
+    private final int[] next;  // next hop index on the shortest i -> j path, -1 if none; null without paths
+
+    /** Road metres over the graph's nodes, double storage, with paths. */
     public FloydWarshall(Graph graph) {
-        n = graph.nodes.size();
-        dist = new double[n][n];
-        next = new int[n][n];
-        for (int i = 0; i < n; i++) {
-            Arrays.fill(dist[i], Double.POSITIVE_INFINITY);
-            Arrays.fill(next[i], -1);
+        this(Metric.distance(CsrGraph.from(graph)), false, true, ForkJoinPool.commonPool());
+    }
+
+    public FloydWarshall(Metric metric, boolean floats, boolean paths, ForkJoinPool pool) {
+        this.csr = metric.csr;
+        this.n = csr.n;
+        if ((long) n * n > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Too many nodes for a dense table: " + n);
+        d = floats ? null : new double[n * n];
+        f = floats ? new float[n * n] : null;
+        next = paths ? new int[n * n] : null;
+        if (floats) Arrays.fill(f, Float.POSITIVE_INFINITY);
+        else Arrays.fill(d, Double.POSITIVE_INFINITY);
+        if (paths) Arrays.fill(next, -1);
+        for (int u = 0; u < n; u++) {
+            set(u * n + u, 0.0, u);
+            for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                int v = csr.targets[e];
+                if (metric.weight[e] < get(u * n + v)) set(u * n + v, metric.weight[e], v); // parallel edges: keep the cheapest
+            }
         }
-        for (Node node : graph.nodes.values()) {
-            dist[node.id-1][node.id-1] = 0;
-            next[node.id-1][node.id-1] = node.id-1;
+        run(pool);
+    }
+
+    private double get(int ij) {
+        return d != null ? d[ij] : f[ij];
+    }
+
+    private void set(int ij, double w, int hop) {
+        if (d != null) d[ij] = w;
+        else f[ij] = (float) w;
+        if (next != null) next[ij] = hop;
+    }
+
+    private void run(ForkJoinPool pool) {
+        int blocks = (n + TILE - 1) / TILE;
+        try {
+            pool.submit(() -> {
+                for (int kb = 0; kb < blocks; kb++) {
+                    int k = kb;
+                    relax(k, k, k);
+                    IntStream.range(0, 2 * blocks).parallel().forEach(t -> {
+                        if (t < blocks && t != k) relax(k, t, k);
+                        else if (t >= blocks && t - blocks != k) relax(t - blocks, k, k);
+                    });
+                    IntStream.range(0, blocks * blocks).parallel().forEach(t -> {
+                        int bi = t / blocks, bj = t % blocks;
+                        if (bi != k && bj != k) relax(bi, bj, k);
+                    });
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Floyd-Warshall interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Floyd-Warshall failed", e.getCause());
         }
-        for (List<Edge> edges : graph.adj.values()) {
-            for (Edge edge : edges) {
-                dist[edge.fromId-1][edge.toId-1] = edge.distanceMeters;
-                next[edge.fromId-1][edge.toId-1] = edge.toId-1;
+    }
+
+    // Relax block (bi, bj) through the pivots of block kb
+    private void relax(int bi, int bj, int kb) {
+        int i0 = bi * TILE, i1 = Math.min(n, i0 + TILE);
+        int j0 = bj * TILE, j1 = Math.min(n, j0 + TILE);
+        int k0 = kb * TILE, k1 = Math.min(n, k0 + TILE);
+        if (d != null) relaxDouble(i0, i1, j0, j1, k0, k1);
+        else relaxFloat(i0, i1, j0, j1, k0, k1);
+    }
+
+    private void relaxDouble(int i0, int i1, int j0, int j1, int k0, int k1) {
+        for (int k = k0; k < k1; k++) {
+            int kr = k * n;
+            for (int i = i0; i < i1; i++) {
+                int ir = i * n;
+                double dik = d[ir + k];
+                if (dik == Double.POSITIVE_INFINITY) continue;
+                for (int j = j0; j < j1; j++) {
+                    double alt = dik + d[kr + j];
+                    if (alt < d[ir + j]) {
+                        d[ir + j] = alt;
+                        if (next != null) next[ir + j] = next[ir + k];
+                    }
+                }
             }
         }
-        for (int k = 0; k < n; k++) {
-            for (int i = 0; i < n; i++) {
-                for (int j = 0; j < n; j++) {
-                    if (dist[i][k] + dist[k][j] < dist[i][j]) {
-                        dist[i][j] = dist[i][k] + dist[k][j];
-                        next[i][j] = next[i][k];
+    }
+
+    private void relaxFloat(int i0, int i1, int j0, int j1, int k0, int k1) {
+        for (int k = k0; k < k1; k++) {
+            int kr = k * n;
+            for (int i = i0; i < i1; i++) {
+                int ir = i * n;
+                float dik = f[ir + k];
+                if (dik == Float.POSITIVE_INFINITY) continue;
+                for (int j = j0; j < j1; j++) {
+                    float alt = dik + f[kr + j];
+                    if (alt < f[ir + j]) {
+                        f[ir + j] = alt;
+                        if (next != null) next[ir + j] = next[ir + k];
                     }
                 }
             }
         }
     }
 
-    public List<Integer> getPath(int u, int v) {
-        if (next[u][v] == -1) return null;
+    /** Shortest cost between two external ids, +infinity when unreachable or unknown. */
+    public double dist(int fromId, int toId) {
+        int i = csr.indexOf(fromId), j = csr.indexOf(toId);
+        return i < 0 || j < 0 ? Double.POSITIVE_INFINITY : get(i * n + j);
+    }
+
+    /** Row i (dense index) into out, which must hold n values. */
+    void copyRow(int i, double[] out) {
+        int ir = i * n;
+        if (d != null) System.arraycopy(d, ir, out, 0, n);
+        else for (int j = 0; j < n; j++) out[j] = f[ir + j];
+    }
+
+    /** Node ids of a shortest path between two external ids, or null if there is none. */
+    public List<Integer> getPath(int fromId, int toId) {
+        if (next == null) throw new IllegalStateException("Built without paths");
+        int u = csr.indexOf(fromId), v = csr.indexOf(toId);
+        if (u < 0 || v < 0 || next[u * n + v] == -1) return null;
         List<Integer> path = new ArrayList<>();
         while (u != v) {
-            path.add(u+1);
-            u = next[u][v];
+            path.add(csr.ids[u]);
+            u = next[u * n + v];
         }
-        path.add(v+1);
+        path.add(csr.ids[v]);
         return path;
     }
 }
@@ -5,16 +5,57 @@ import java.util.*;
 public class Graph {
     public Map<Integer, Node> nodes = new HashMap<>();
     public Map<Integer, List<Edge>> adj = new HashMap<>();
+    // Reverse index: node id -> edges ending there (the same Edge objects as in adj)
+    public Map<Integer, List<Edge>> radj = new HashMap<>();
+    private CsrGraph csr;
+    private SpatialIndex spatial;
+    private NameIndex names;
 
     public void addNode(Node node) {
         nodes.put(node.id, node);
         adj.putIfAbsent(node.id, new ArrayList<>());
+        radj.putIfAbsent(node.id, new ArrayList<>());
+        csr = null;
+        spatial = null;
+        names = null;
     }
 
     public void addEdge(Edge edge) {
         adj.get(edge.fromId).add(edge);
+        radj.get(edge.toId).add(edge);
         if (edge.undirected) {
-            adj.get(edge.toId).add(new Edge(edge.toId, edge.fromId, edge.distanceMeters, edge.speedKph, true));
+            Edge twin = new Edge(edge.toId, edge.fromId, edge.distanceMeters, edge.speedKph, true, edge.highway);
+            adj.get(edge.toId).add(twin);
+            radj.get(edge.fromId).add(twin);
         }
+        csr = null;
+    }
+
+    /** Edges leaving a node (empty for unknown ids). */
+    public List<Edge> outgoing(int id) {
+        return adj.getOrDefault(id, Collections.emptyList());
+    }
+
+    /** Edges arriving at a node (empty for unknown ids). */
+    public List<Edge> incoming(int id) {
+        return radj.getOrDefault(id, Collections.emptyList());
+    }
+
+    /** Flat CSR snapshot used by the routing code, nodes in NodeOrder.DEFAULT; rebuilt after the graph is modified. */
+    public synchronized CsrGraph csr() {
+        if (csr == null) csr = NodeOrder.DEFAULT.apply(CsrGraph.from(this));
+        return csr;
+    }
+
+    /** KD-tree over the node coordinates; rebuilt after nodes are added. */
+    public synchronized SpatialIndex spatialIndex() {
+        if (spatial == null) spatial = new SpatialIndex(nodes.values());
+        return spatial;
+    }
+
+    /** Normalized-name lookup structures; rebuilt after nodes are added. */
+    public synchronized NameIndex nameIndex() {
+        if (names == null) names = new NameIndex(nodes.values());
+        return names;
     }
 }
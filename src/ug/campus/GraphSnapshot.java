@@ -0,0 +1,243 @@
+package ug.campus;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary snapshot of a road graph plus the POI table, read through a
+ * memory-mapped file instead of re-parsing the CSVs.
+ *
+ * The mapping only replaces parsing: open bulk-copies every section into heap
+ * arrays, because the search loops index plain int[]/double[] arrays. Opening
+ * therefore still grows with the graph size, and each JVM holds a private copy
+ * rather than sharing the OS page cache with other processes. Cross-process
+ * sharing is deliberately not provided. open(file, false) skips the CRC and
+ * fingerprint passes and keeps only the header checks; Main uses it for
+ * snapshots that are newer than their CSVs.
+ *
+ * Layout (little-endian):
+ *   header   magic "UGGS", version, n, m, poiCount, highway section offset (0 if none),
+ *            CSR fingerprint, byte offsets of the nodes, csr, edges and pois sections,
+ *            node order (NodeOrder ordinal), padding (72 bytes)
+ *   nodes    int ids[n], double lat[n], double lon[n]
+ *   csr      int offsets[n+1], int targets[m]
+ *   edges    double dist[m], float speed[m]
+ *   pois     per POI: int id, double lat, double lon, name and type as (short length, UTF-8 bytes)
+ *   highway  int class count k, k-1 class names (code 0 is "none"), byte code[m]
+ *   trailer  long CRC32 of everything before it
+ * Version 1 files (no highway section) are still read. Versions 1 and 2 have no
+ * node order and were written in ID order; a snapshot in another order than
+ * NodeOrder.DEFAULT is renumbered on open, so its fingerprint matches the graph
+ * loaded from CSV (and any contraction hierarchy built from it).
+ */
+public final class GraphSnapshot {
+    private static final int MAGIC = 0x55474753; // "UGGS"
+    public static final int VERSION = 3;
+    private static final int HEADER_BYTES = 72;
+
+    public final CsrGraph road;
+    public final Graph pois;
+
+    GraphSnapshot(CsrGraph road, Graph pois) {
+        this.road = road;
+        this.pois = pois;
+    }
+
+    /** Writes road, whose dense indices are in the given order, and the POIs. */
+    public static void write(File file, CsrGraph road, NodeOrder order, Graph pois) throws IOException {
+        int n = road.n, m = road.m;
+        List<Node> poiList = new ArrayList<>(pois.nodes.values());
+        poiList.sort(Comparator.comparingInt(p -> p.id));
+        List<byte[]> names = new ArrayList<>(), types = new ArrayList<>();
+        long poiBytes = 0;
+        for (Node p : poiList) {
+            byte[] name = utf8(p.name), type = utf8(p.type);
+            names.add(name);
+            types.add(type);
+            poiBytes += 4 + 8 + 8 + 2 + name.length + 2 + type.length;
+        }
+        long offNodes = HEADER_BYTES;
+        long offCsr = offNodes + 4L * n + 16L * n;
+        long offEdges = offCsr + 4L * (n + 1) + 4L * m;
+        long offPois = offEdges + 8L * m + 4L * m;
+        String[] classes = road.highwayClasses();
+        List<byte[]> classNames = new ArrayList<>();
+        long highwayBytes = 0;
+        if (classes != null) {
+            highwayBytes = 4 + m;
+            for (int c = 1; c < classes.length; c++) {
+                classNames.add(utf8(classes[c]));
+                highwayBytes += 2 + classNames.get(c - 1).length;
+            }
+        }
+        long offHighway = classes == null ? 0 : offPois + poiBytes;
+        long size = offPois + poiBytes + highwayBytes + 8;
+        if (size > Integer.MAX_VALUE) throw new IOException("Graph too large for a single mapped snapshot: " + size + " bytes");
+
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m).putInt(poiList.size()).putInt((int) offHighway);
+            buf.putLong(road.fingerprint());
+            buf.putLong(offNodes).putLong(offCsr).putLong(offEdges).putLong(offPois);
+            buf.putInt(order.ordinal()).putInt(0);
+
+            buf.position((int) offNodes);
+            buf.asIntBuffer().put(road.ids);
+            buf.position((int) offNodes + 4 * n);
+            buf.asDoubleBuffer().put(road.lat);
+            buf.position((int) offNodes + 12 * n);
+            buf.asDoubleBuffer().put(road.lon);
+            buf.position((int) offCsr);
+            buf.asIntBuffer().put(road.offsets);
+            buf.position((int) offCsr + 4 * (n + 1));
+            buf.asIntBuffer().put(road.targets);
+            buf.position((int) offEdges);
+            buf.asDoubleBuffer().put(road.dist);
+            buf.position((int) offEdges + 8 * m);
+            buf.asFloatBuffer().put(road.speed);
+
+            buf.position((int) offPois);
+            for (int i = 0; i < poiList.size(); i++) {
+                Node p = poiList.get(i);
+                buf.putInt(p.id).putDouble(p.lat).putDouble(p.lon);
+                buf.putShort((short) names.get(i).length).put(names.get(i));
+                buf.putShort((short) types.get(i).length).put(types.get(i));
+            }
+            if (classes != null) {
+                buf.putInt(classes.length);
+                for (byte[] name : classNames) buf.putShort((short) name.length).put(name);
+                buf.put(road.highwayCodes());
+            }
+            long crc = checksum(buf, (int) (size - 8));
+            buf.position((int) (size - 8));
+            buf.putLong(crc);
+            buf.force();
+        }
+    }
+
+    /** Maps a snapshot and verifies its header, checksum and CSR fingerprint. */
+    public static GraphSnapshot open(File file) throws IOException {
+        return open(file, true);
+    }
+
+    /** As above; without verify only the header is checked, and a damaged body may go unnoticed. */
+    public static GraphSnapshot open(File file, boolean verify) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < 64 + 8) throw new IOException("Truncated graph snapshot: " + file);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (buf.getInt(0) != MAGIC) throw new IOException("Not a graph snapshot: " + file);
+            int version = buf.getInt(4);
+            if (version < 1 || version > VERSION) throw new IOException("Unsupported graph snapshot version " + version + " in " + file);
+            if (verify && checksum(buf, (int) (size - 8)) != buf.getLong((int) (size - 8))) {
+                throw new IOException("Checksum mismatch in graph snapshot: " + file);
+            }
+            int n = buf.getInt(8), m = buf.getInt(12), poiCount = buf.getInt(16);
+            int offHighway = version == 1 ? 0 : buf.getInt(20);
+            long fingerprint = buf.getLong(24);
+            int offNodes = (int) buf.getLong(32), offCsr = (int) buf.getLong(40);
+            int offEdges = (int) buf.getLong(48), offPois = (int) buf.getLong(56);
+            int ordinal = version < 3 ? NodeOrder.ID.ordinal() : buf.getInt(64);
+            if (ordinal < 0 || ordinal >= NodeOrder.values().length) throw new IOException("Unknown node order " + ordinal + " in " + file);
+            NodeOrder order = NodeOrder.values()[ordinal];
+            if (n < 0 || m < 0 || poiCount < 0 || offNodes < 64 || offCsr < offNodes + 20L * n || offEdges < offCsr + 4L * (n + 1) + 4L * m
+                    || offPois < offEdges + 12L * m || offPois > size - 8 || (offHighway != 0 && (offHighway < offPois || offHighway > size - 8))) {
+                throw new IOException("Corrupt graph snapshot header: " + file);
+            }
+
+            int[] ids = new int[n], offsets = new int[n + 1], targets = new int[m];
+            double[] lat = new double[n], lon = new double[n], dist = new double[m];
+            float[] speed = new float[m];
+            slice(buf, offNodes).asIntBuffer().get(ids);
+            slice(buf, offNodes + 4 * n).asDoubleBuffer().get(lat);
+            slice(buf, offNodes + 12 * n).asDoubleBuffer().get(lon);
+            slice(buf, offCsr).asIntBuffer().get(offsets);
+            slice(buf, offCsr + 4 * (n + 1)).asIntBuffer().get(targets);
+            slice(buf, offEdges).asDoubleBuffer().get(dist);
+            slice(buf, offEdges + 8 * m).asFloatBuffer().get(speed);
+            byte[] highway = null;
+            String[] classes = null;
+            if (offHighway != 0) {
+                ByteBuffer h = slice(buf, offHighway);
+                int k = h.getInt();
+                if (k < 1 || k > 256) throw new IOException("Corrupt highway section in graph snapshot: " + file);
+                classes = new String[k];
+                for (int c = 1; c < classes.length; c++) classes[c] = readString(h);
+                highway = new byte[m];
+                h.get(highway);
+            }
+            CsrGraph road = CsrGraph.of(ids, lat, lon, offsets, targets, dist, speed, highway, classes);
+            if (verify && road.fingerprint() != fingerprint) throw new IOException("Graph snapshot fingerprint mismatch: " + file);
+            // back to ID order first, so the result is exactly what RoadGraphLoader builds from the CSVs
+            if (order != NodeOrder.DEFAULT) road = NodeOrder.DEFAULT.apply(NodeOrder.ID.apply(road));
+
+            Graph pois = new Graph();
+            ByteBuffer p = slice(buf, offPois);
+            for (int i = 0; i < poiCount; i++) {
+                int id = p.getInt();
+                double plat = p.getDouble(), plon = p.getDouble();
+                String name = readString(p), type = readString(p);
+                pois.addNode(new Node(id, name, plat, plon, type));
+            }
+            return new GraphSnapshot(road, pois);
+        } catch (RuntimeException e) {
+            // a damaged body that slipped past the header checks (unverified opens)
+            throw new IOException("Corrupt graph snapshot: " + file, e);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int offset) {
+        ByteBuffer b = buf.duplicate();
+        b.position(offset);
+        return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long checksum(ByteBuffer buf, int length) {
+        ByteBuffer b = buf.duplicate();
+        b.position(0).limit(length);
+        CRC32 crc = new CRC32();
+        crc.update(b);
+        return crc.getValue();
+    }
+
+    private static byte[] utf8(String s) {
+        byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        if (b.length > Short.MAX_VALUE) throw new IllegalArgumentException("String too long for snapshot: " + s);
+        return b;
+    }
+
+    private static String readString(ByteBuffer b) {
+        byte[] bytes = new byte[b.getShort()];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Writes data/road_<mode>.graph from the CSV road graph and data/nodes.csv */
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "drive";
+        long t0 = System.nanoTime();
+        CsrGraph road = RoadGraphLoader.loadCsr("data/road_" + mode + "_nodes.csv", "data/road_" + mode + "_edges.csv", NodeOrder.DEFAULT);
+        Graph pois = new Graph();
+        Main.loadNodes(pois, "data/nodes.csv");
+        long t1 = System.nanoTime();
+        File out = new File("data/road_" + mode + ".graph");
+        write(out, road, NodeOrder.DEFAULT, pois);
+        long t2 = System.nanoTime();
+        GraphSnapshot snap = open(out);
+        long t3 = System.nanoTime();
+        open(out, false);
+        long t4 = System.nanoTime();
+        System.out.printf("CSV load %.1f ms, snapshot write %.1f ms, snapshot open %.1f ms (%.1f ms unverified) (%d nodes, %d edges, %d POIs) -> %s\n",
+                (t1 - t0) / 1e6, (t2 - t1) / 1e6, (t3 - t2) / 1e6, (t4 - t3) / 1e6, snap.road.n, snap.road.m, snap.pois.nodes.size(), out.getPath());
+    }
+}
@@ -0,0 +1,112 @@
+package ug.campus;
+
+import java.util.Arrays;
+
+/**
+ * Indexed 4-ary min-heap over dense node indices 0..capacity-1 with
+ * decrease-key. Each index is in the heap at most once, so searches never
+ * see stale entries. Clearing costs O(size), not O(capacity).
+ */
+public final class IndexedHeap {
+    private final int[] heap;     // heap slot -> node
+    private final double[] keys;  // heap slot -> key
+    private final int[] pos;      // node -> heap slot, -1 if absent
+    private int size;
+    public int pushes;    // insertions since the last clear()
+    public int decreases; // key decreases since the last clear()
+
+    public IndexedHeap(int capacity) {
+        heap = new int[capacity];
+        keys = new double[capacity];
+        pos = new int[capacity];
+        Arrays.fill(pos, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int v) {
+        return pos[v] >= 0;
+    }
+
+    public double minKey() {
+        return keys[0];
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) pos[heap[i]] = -1;
+        size = 0;
+        pushes = 0;
+        decreases = 0;
+    }
+
+    /** Inserts v or lowers its key; returns false if v is already queued with a key <= key. */
+    public boolean insertOrDecrease(int v, double key) {
+        int i = pos[v];
+        if (i < 0) {
+            i = size++;
+            pushes++;
+        } else if (keys[i] <= key) {
+            return false;
+        } else {
+            decreases++;
+        }
+        siftUp(i, v, key);
+        return true;
+    }
+
+    /** Inserts v or moves it to a new key, higher or lower. */
+    public void update(int v, double key) {
+        int i = pos[v];
+        if (i < 0 || key < keys[i]) {
+            siftUp(i < 0 ? size++ : i, v, key);
+        } else {
+            siftDown(i, v, key);
+        }
+    }
+
+    public int pollMin() {
+        int min = heap[0];
+        pos[min] = -1;
+        int last = --size;
+        if (last > 0) siftDown(0, heap[last], keys[last]);
+        return min;
+    }
+
+    private void siftUp(int i, int v, double key) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 2;
+            if (keys[parent] <= key) break;
+            place(i, heap[parent], keys[parent]);
+            i = parent;
+        }
+        place(i, v, key);
+    }
+
+    private void siftDown(int i, int v, double key) {
+        while (true) {
+            int first = (i << 2) + 1;
+            if (first >= size) break;
+            int best = first;
+            int end = Math.min(first + 4, size);
+            for (int c = first + 1; c < end; c++) {
+                if (keys[c] < keys[best]) best = c;
+            }
+            if (keys[best] >= key) break;
+            place(i, heap[best], keys[best]);
+            i = best;
+        }
+        place(i, v, key);
+    }
+
+    private void place(int i, int v, double key) {
+        heap[i] = v;
+        keys[i] = key;
+        pos[v] = i;
+    }
+}
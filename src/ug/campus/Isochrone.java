@@ -0,0 +1,238 @@
+package ug.campus;
+
+import java.util.*;
+
+/**
+ * Area reachable from a start node within a budget (metres or seconds,
+ * depending on the metric): the road nodes, the POIs snapped to them and a
+ * concave outline. Several budgets are cut from one search up to the largest.
+ */
+public final class Isochrone {
+    // Hull edges shorter than this are not dug further
+    private static final double MIN_EDGE_METERS = 40.0;
+    // Dig an edge when its length exceeds this multiple of the inner point's distance to the nearer end
+    private static final double CONCAVITY = 2.0;
+
+    public final double budget;
+    public final int[] nodes;         // road node ids, cheapest first
+    public final double[] costs;      // cost of each node
+    public final List<Node> pois;     // POIs whose road node is within budget, cheapest first
+    public final double[][] outline;  // closed ring of {lat, lon}, counter-clockwise
+
+    private Isochrone(double budget, int[] nodes, double[] costs, List<Node> pois, double[][] outline) {
+        this.budget = budget;
+        this.nodes = nodes;
+        this.costs = costs;
+        this.pois = pois;
+        this.outline = outline;
+    }
+
+    /** One bounded search from src (a road node id) answering every budget; results in ascending budget order. */
+    public static List<Isochrone> compute(RouteFinder finder, int src, double[] budgets, Metric metric,
+                                          Graph places, Map<Integer, Integer> snap) {
+        double[] sorted = budgets.clone();
+        Arrays.sort(sorted);
+        RouteFinder.Reached reached = finder.reachable(src, sorted[sorted.length - 1], metric);
+        Map<Integer, Double> costOf = new HashMap<>();
+        for (int i = 0; i < reached.ids.length; i++) costOf.put(reached.ids[i], reached.costs[i]);
+        // POIs on reached road nodes, cheapest first
+        List<Node> reachedPois = new ArrayList<>();
+        Map<Node, Double> poiCost = new HashMap<>();
+        for (Node p : places.nodes.values()) {
+            Integer road = snap.get(p.id);
+            Double c = road == null ? null : costOf.get(road);
+            if (c != null) {
+                reachedPois.add(p);
+                poiCost.put(p, c);
+            }
+        }
+        reachedPois.sort(Comparator.comparingDouble((Node p) -> poiCost.get(p)).thenComparingInt(p -> p.id));
+
+        CsrGraph csr = finder.csr();
+        List<Isochrone> out = new ArrayList<>();
+        for (double budget : sorted) {
+            int count = 0;
+            while (count < reached.costs.length && reached.costs[count] <= budget) count++;
+            int[] nodes = Arrays.copyOf(reached.ids, count);
+            double[] lat = new double[count], lon = new double[count];
+            for (int i = 0; i < count; i++) {
+                int idx = csr.indexOf(nodes[i]);
+                lat[i] = csr.lat[idx];
+                lon[i] = csr.lon[idx];
+            }
+            List<Node> pois = new ArrayList<>();
+            for (Node p : reachedPois) {
+                if (poiCost.get(p) <= budget) pois.add(p);
+            }
+            out.add(new Isochrone(budget, nodes, Arrays.copyOf(reached.costs, count), pois, concaveHull(lat, lon)));
+        }
+        return out;
+    }
+
+    /** GeoJSON FeatureCollection with one outline polygon per budget. */
+    public static String toGeoJson(List<Isochrone> isochrones, String metric) {
+        return writeGeoJson(new Json(), isochrones, metric).toString();
+    }
+
+    static Json writeGeoJson(Json j, List<Isochrone> isochrones, String metric) {
+        j.obj().field("type", "FeatureCollection").key("features").arr();
+        for (Isochrone iso : isochrones) writeFeature(j, iso, metric);
+        return j.endArr().endObj();
+    }
+
+    private static void writeFeature(Json j, Isochrone iso, String metric) {
+        j.obj().field("type", "Feature");
+        j.key("properties").obj().field("metric", metric).field("budget", iso.budget)
+                .field("roadNodes", iso.nodes.length).field("pois", iso.pois.size()).endObj();
+        j.key("geometry").obj();
+        // a Polygon is a list of rings; with too few points for an area, a MultiPoint is the positions themselves
+        boolean polygon = iso.outline.length >= 4;
+        j.field("type", polygon ? "Polygon" : "MultiPoint").key("coordinates").arr();
+        if (polygon) j.arr();
+        for (double[] p : iso.outline) j.arr().val(p[1]).val(p[0]).endArr();
+        if (polygon) j.endArr();
+        j.endArr().endObj().endObj();
+    }
+
+    /*
+     * Concave hull by edge digging (after Park & Oh): start from the convex
+     * hull, and for each long edge a-b take the inner point p nearest to it. If
+     * the edge is much longer than p's distance to its nearer end, replace a-b
+     * by a-p-b, provided the new edges cross no hull edge and no point falls
+     * outside. Points are projected to local metres first.
+     */
+    static double[][] concaveHull(double[] lat, double[] lon) {
+        // distinct points only
+        LinkedHashMap<String, double[]> unique = new LinkedHashMap<>();
+        for (int i = 0; i < lat.length; i++) unique.putIfAbsent(lat[i] + "," + lon[i], new double[] { lat[i], lon[i] });
+        double[][] pts = unique.values().toArray(new double[0][]);
+        int n = pts.length;
+        if (n < 3) {
+            return pts;
+        }
+        double lat0 = 0;
+        for (double[] p : pts) lat0 += p[0];
+        lat0 /= n;
+        double kx = 6371000.0 * Math.toRadians(1) * Math.cos(Math.toRadians(lat0)), ky = 6371000.0 * Math.toRadians(1);
+        double[] x = new double[n], y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = pts[i][1] * kx;
+            y[i] = pts[i][0] * ky;
+        }
+
+        int[] hull = convexHull(x, y);
+        if (hull.length < 3) return ring(pts, hull);
+        int[] next = new int[n], prev = new int[n];
+        boolean[] onHull = new boolean[n];
+        for (int i = 0; i < hull.length; i++) {
+            int a = hull[i], b = hull[(i + 1) % hull.length];
+            next[a] = b;
+            prev[b] = a;
+            onHull[a] = true;
+        }
+        ArrayDeque<int[]> edges = new ArrayDeque<>();
+        for (int i = 0; i < hull.length; i++) edges.add(new int[] { hull[i], hull[(i + 1) % hull.length] });
+        int start = hull[0];
+        while (!edges.isEmpty()) {
+            int[] e = edges.poll();
+            int a = e[0], b = e[1];
+            if (!onHull[a] || next[a] != b) continue; // edge was replaced meanwhile
+            double len = Math.hypot(x[b] - x[a], y[b] - y[a]);
+            if (len < MIN_EDGE_METERS) continue;
+            int p = -1;
+            double best = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (onHull[i]) continue;
+                double d = segmentDistance(x[i], y[i], x[a], y[a], x[b], y[b]);
+                if (d < best) {
+                    best = d;
+                    p = i;
+                }
+            }
+            if (p < 0) break; // every point is on the hull
+            double near = Math.min(Math.hypot(x[p] - x[a], y[p] - y[a]), Math.hypot(x[p] - x[b], y[p] - y[b]));
+            if (len / near <= CONCAVITY) continue;
+            if (crossesHull(a, b, p, start, next, x, y) || anyInside(a, p, b, onHull, x, y)) continue;
+            next[a] = p;
+            prev[p] = a;
+            next[p] = b;
+            prev[b] = p;
+            onHull[p] = true;
+            edges.add(new int[] { a, p });
+            edges.add(new int[] { p, b });
+        }
+        List<Integer> order = new ArrayList<>();
+        int u = start;
+        do {
+            order.add(u);
+            u = next[u];
+        } while (u != start);
+        return ring(pts, order.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    // Closed ring of the given point indices
+    private static double[][] ring(double[][] pts, int[] idx) {
+        double[][] r = new double[idx.length + (idx.length >= 3 ? 1 : 0)][];
+        for (int i = 0; i < idx.length; i++) r[i] = pts[idx[i]];
+        if (idx.length >= 3) r[idx.length] = pts[idx[0]];
+        return r;
+    }
+
+    // Andrew's monotone chain; counter-clockwise, collinear points dropped
+    private static int[] convexHull(double[] x, double[] y) {
+        int n = x.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (p, q) -> x[p] != x[q] ? Double.compare(x[p], x[q]) : Double.compare(y[p], y[q]));
+        int[] h = new int[2 * n];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            while (k >= 2 && cross(x, y, h[k - 2], h[k - 1], order[i]) <= 0) k--;
+            h[k++] = order[i];
+        }
+        for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+            while (k >= lower && cross(x, y, h[k - 2], h[k - 1], order[i]) <= 0) k--;
+            h[k++] = order[i];
+        }
+        return Arrays.copyOf(h, Math.max(0, k - 1));
+    }
+
+    private static double cross(double[] x, double[] y, int o, int a, int b) {
+        return (x[a] - x[o]) * (y[b] - y[o]) - (y[a] - y[o]) * (x[b] - x[o]);
+    }
+
+    private static double segmentDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        double len2 = dx * dx + dy * dy;
+        double t = len2 == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / len2));
+        return Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+    }
+
+    // Would a-p or p-b cross a hull edge it does not share an end with?
+    private static boolean crossesHull(int a, int b, int p, int start, int[] next, double[] x, double[] y) {
+        int u = start;
+        do {
+            int v = next[u];
+            if (u != a && v != a && segmentsCross(x, y, a, p, u, v)) return true;
+            if (u != b && v != b && segmentsCross(x, y, p, b, u, v)) return true;
+            u = v;
+        } while (u != start);
+        return false;
+    }
+
+    private static boolean segmentsCross(double[] x, double[] y, int a, int b, int c, int d) {
+        double d1 = cross(x, y, a, b, c), d2 = cross(x, y, a, b, d);
+        double d3 = cross(x, y, c, d, a), d4 = cross(x, y, c, d, b);
+        return ((d1 > 0) != (d2 > 0)) && ((d3 > 0) != (d4 > 0)) && d1 != 0 && d2 != 0 && d3 != 0 && d4 != 0;
+    }
+
+    // Is any off-hull point strictly inside triangle a-p-b (it would end up outside the outline)?
+    private static boolean anyInside(int a, int p, int b, boolean[] onHull, double[] x, double[] y) {
+        for (int i = 0; i < x.length; i++) {
+            if (onHull[i] || i == p) continue;
+            double c1 = cross(x, y, a, p, i), c2 = cross(x, y, p, b, i), c3 = cross(x, y, b, a, i);
+            if ((c1 > 0 && c2 > 0 && c3 > 0) || (c1 < 0 && c2 < 0 && c3 < 0)) return true;
+        }
+        return false;
+    }
+}
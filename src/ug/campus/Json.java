@@ -0,0 +1,109 @@
+package ug.campus;
+
+import java.util.*;
+
+/** Minimal streaming JSON writer (no external dependencies). Commas are inserted automatically. */
+public final class Json {
+    private final StringBuilder sb = new StringBuilder();
+    private final Deque<boolean[]> first = new ArrayDeque<>(); // per open container: nothing written yet
+    private boolean afterKey;
+
+    public Json obj() {
+        separate();
+        sb.append('{');
+        first.push(new boolean[] { true });
+        return this;
+    }
+
+    public Json arr() {
+        separate();
+        sb.append('[');
+        first.push(new boolean[] { true });
+        return this;
+    }
+
+    public Json endObj() {
+        first.pop();
+        sb.append('}');
+        return this;
+    }
+
+    public Json endArr() {
+        first.pop();
+        sb.append(']');
+        return this;
+    }
+
+    public Json key(String k) {
+        separate();
+        quote(k);
+        sb.append(':');
+        afterKey = true;
+        return this;
+    }
+
+    public Json val(String s) {
+        separate();
+        if (s == null) sb.append("null");
+        else quote(s);
+        return this;
+    }
+
+    public Json val(long v) {
+        separate();
+        sb.append(v);
+        return this;
+    }
+
+    public Json val(double v) {
+        separate();
+        if (Double.isNaN(v) || Double.isInfinite(v)) sb.append("null");
+        else sb.append(v);
+        return this;
+    }
+
+    public Json val(boolean v) {
+        separate();
+        sb.append(v);
+        return this;
+    }
+
+    public Json field(String k, String v) { return key(k).val(v); }
+    public Json field(String k, long v) { return key(k).val(v); }
+    public Json field(String k, double v) { return key(k).val(v); }
+    public Json field(String k, boolean v) { return key(k).val(v); }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+
+    private void separate() {
+        if (afterKey) {
+            afterKey = false;
+            return;
+        }
+        if (first.isEmpty()) return;
+        boolean[] f = first.peek();
+        if (!f[0]) sb.append(',');
+        f[0] = false;
+    }
+
+    private void quote(String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,269 @@
+package ug.campus;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * k shortest loopless paths (Yen, with Lawler's rule of only spurring from the
+ * point where a path left its parent) and a penalty-based variant that trades
+ * optimality for routes that actually look different.
+ *
+ * One bounded backward search from the target gives exact remaining costs near
+ * the shortest path; every spur search is an A* guided by them, so a spur that
+ * rejoins the shortest-path tree settles little more than its detour. Spur
+ * searches of one round are independent and run in parallel.
+ */
+final class KShortestPaths {
+    // Backward search radius as a multiple of the shortest distance; beyond it the radius itself is the estimate
+    private static final double TREE_RADIUS = 2.0;
+    // Weight multiplier applied to the edges of each found route in penalty mode
+    private static final double PENALTY = 0.5;
+
+    private final CsrGraph csr;
+    private final double[] weight;
+    private final Supplier<SearchContext> contexts;
+    private final ForkJoinPool pool;
+
+    KShortestPaths(CsrGraph csr, double[] weight, Supplier<SearchContext> contexts, ForkJoinPool pool) {
+        this.csr = csr;
+        this.weight = weight;
+        this.contexts = contexts;
+        this.pool = pool;
+    }
+
+    /** Path over dense indices; deviation is the index where it branched off the path it was spurred from. */
+    static final class Path {
+        final int[] nodes;
+        final double cost;
+        final int deviation;
+
+        Path(int[] nodes, double cost, int deviation) {
+            this.nodes = nodes;
+            this.cost = cost;
+            this.deviation = deviation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Path && Arrays.equals(nodes, ((Path) o).nodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(nodes);
+        }
+    }
+
+    // Exact cost to t for nodes within the search radius, the radius (a lower bound) elsewhere
+    private static final class Tree {
+        final double[] toTarget;
+        final int[] next; // next hop towards t, -1 outside the tree
+
+        Tree(int n) {
+            toTarget = new double[n];
+            next = new int[n];
+        }
+    }
+
+    List<Path> yen(int s, int t, int k) {
+        List<Path> result = new ArrayList<>();
+        Tree tree = backwardTree(s, t);
+        if (tree == null || k <= 0) return result;
+        result.add(treePath(tree, s, t));
+        PriorityQueue<Path> candidates = new PriorityQueue<>(Comparator.comparingDouble(p -> p.cost));
+        Set<Path> seen = new HashSet<>(result);
+        while (result.size() < k) {
+            Path last = result.get(result.size() - 1);
+            List<Path> found = parallel(IntStream.range(last.deviation, last.nodes.length - 1)
+                    .mapToObj(i -> (Supplier<Path>) () -> spur(result, last, i, tree)).collect(Collectors.toList()));
+            for (Path p : found) {
+                if (seen.add(p)) candidates.add(p);
+            }
+            if (candidates.isEmpty()) break;
+            result.add(candidates.poll());
+        }
+        return result;
+    }
+
+    /**
+     * Penalty alternatives: after each route its edges (both directions) get
+     * more expensive and the search is repeated. Routes costing more than
+     * maxStretch times the shortest are dropped. Returned cheapest first.
+     */
+    List<Path> penalized(int s, int t, int k, double maxStretch) {
+        List<Path> result = new ArrayList<>();
+        Tree tree = backwardTree(s, t);
+        if (tree == null || k <= 0) return result;
+        Path best = treePath(tree, s, t);
+        result.add(best);
+        Set<Path> seen = new HashSet<>(result);
+        double[] w = weight.clone();
+        // penalised weights only grow, so the unpenalised tree stays an admissible estimate
+        for (int attempt = 0; attempt < 3 * k && result.size() < k; attempt++) {
+            Path last = result.get(result.size() - 1);
+            for (int i = 0; i + 1 < last.nodes.length; i++) {
+                penalize(w, last.nodes[i], last.nodes[i + 1]);
+                penalize(w, last.nodes[i + 1], last.nodes[i]);
+            }
+            Path p = search(s, t, w, tree, null, -1, null, 0.0, 0);
+            if (p == null) break;
+            Path real = new Path(p.nodes, cost(p.nodes, weight), 0);
+            if (real.cost > maxStretch * best.cost) break;
+            if (seen.add(real)) result.add(real);
+        }
+        result.sort(Comparator.comparingDouble(p -> p.cost));
+        return result;
+    }
+
+    private void penalize(double[] w, int u, int v) {
+        for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+            if (csr.targets[e] == v) w[e] += PENALTY * weight[e];
+        }
+    }
+
+    // Spur from last.nodes[i]: keep the root, avoid the root's nodes and every known continuation of the same root
+    private Path spur(List<Path> result, Path last, int i, Tree tree) {
+        int spurNode = last.nodes[i];
+        int[] banned = new int[result.size()];
+        int bannedCount = 0;
+        for (Path p : result) {
+            if (p.nodes.length > i + 1 && samePrefix(p.nodes, last.nodes, i)) banned[bannedCount++] = p.nodes[i + 1];
+        }
+        double rootCost = cost(Arrays.copyOf(last.nodes, i + 1), weight);
+        int[] root = Arrays.copyOf(last.nodes, i);
+        Path tail = search(spurNode, last.nodes[last.nodes.length - 1], weight, tree, root,
+                spurNode, Arrays.copyOf(banned, bannedCount), rootCost, i);
+        if (tail == null) return null;
+        int[] nodes = new int[i + tail.nodes.length];
+        System.arraycopy(last.nodes, 0, nodes, 0, i);
+        System.arraycopy(tail.nodes, 0, nodes, i, tail.nodes.length);
+        return new Path(nodes, tail.cost, i);
+    }
+
+    private static boolean samePrefix(int[] a, int[] b, int last) {
+        for (int j = 0; j <= last; j++) if (a[j] != b[j]) return false;
+        return true;
+    }
+
+    // A* from s to t over w; blocked nodes are skipped, and so are edges from bannedFrom to any banned target
+    private Path search(int s, int t, double[] w, Tree tree, int[] blocked, int bannedFrom, int[] bannedTargets,
+                        double startCost, int deviation) {
+        SearchContext ctx = contexts.get();
+        ctx.reset();
+        if (blocked != null) for (int v : blocked) ctx.block(v);
+        IndexedHeap heap = ctx.heap;
+        ctx.set(s, 0.0, -1);
+        heap.insertOrDecrease(s, tree.toTarget[s]);
+        while (!heap.isEmpty()) {
+            int u = heap.pollMin();
+            ctx.settled++;
+            if (u == t) break;
+            double du = ctx.dist(u);
+            edges:
+            for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                int v = csr.targets[e];
+                if (ctx.blocked(v)) continue;
+                if (u == bannedFrom) {
+                    for (int b : bannedTargets) if (b == v) continue edges;
+                }
+                double alt = du + w[e];
+                if (alt < ctx.dist(v)) {
+                    ctx.set(v, alt, u);
+                    heap.insertOrDecrease(v, alt + tree.toTarget[v]);
+                }
+            }
+        }
+        if (!ctx.reached(t)) return null;
+        int len = 0;
+        for (int u = t; u != -1; u = ctx.prev(u)) len++;
+        int[] nodes = new int[len];
+        for (int u = t, j = len - 1; u != -1; u = ctx.prev(u)) nodes[j--] = u;
+        return new Path(nodes, startCost + ctx.dist(t), deviation);
+    }
+
+    // Backward Dijkstra from t until the settled radius passes TREE_RADIUS x d(s, t); null if s cannot reach t
+    private Tree backwardTree(int s, int t) {
+        CsrGraph rev = csr.reversed();
+        SearchContext ctx = contexts.get();
+        ctx.reset();
+        IndexedHeap heap = ctx.heap;
+        ctx.set(t, 0.0, -1);
+        heap.insertOrDecrease(t, 0.0);
+        List<Integer> settledNodes = new ArrayList<>();
+        double radius = Double.POSITIVE_INFINITY;
+        double limit = Double.POSITIVE_INFINITY;
+        while (!heap.isEmpty()) {
+            double key = heap.minKey();
+            if (key > limit) {
+                radius = key;
+                break;
+            }
+            int u = heap.pollMin();
+            ctx.settled++;
+            settledNodes.add(u);
+            if (u == s) limit = TREE_RADIUS * key;
+            double du = ctx.dist(u);
+            for (int r = rev.offsets[u]; r < rev.offsets[u + 1]; r++) {
+                int v = rev.targets[r];
+                double alt = du + weight[rev.forwardSlot[r]];
+                if (alt < ctx.dist(v)) {
+                    ctx.set(v, alt, u);
+                    heap.insertOrDecrease(v, alt);
+                }
+            }
+        }
+        if (Double.isInfinite(limit)) return null;
+        Tree tree = new Tree(csr.n);
+        // everything left is unreachable or at least `radius` away
+        Arrays.fill(tree.toTarget, Double.isInfinite(radius) ? 0.0 : radius);
+        Arrays.fill(tree.next, -1);
+        for (int u : settledNodes) {
+            tree.toTarget[u] = ctx.dist(u);
+            tree.next[u] = ctx.prev(u);
+        }
+        return tree;
+    }
+
+    private Path treePath(Tree tree, int s, int t) {
+        List<Integer> nodes = new ArrayList<>();
+        for (int u = s; u != -1; u = tree.next[u]) {
+            nodes.add(u);
+            if (u == t) break;
+        }
+        return new Path(nodes.stream().mapToInt(Integer::intValue).toArray(), tree.toTarget[s], 0);
+    }
+
+    // Cost of a node sequence using the cheapest slot between consecutive nodes
+    private double cost(int[] nodes, double[] w) {
+        double c = 0;
+        for (int i = 0; i + 1 < nodes.length; i++) {
+            double best = Double.POSITIVE_INFINITY;
+            for (int e = csr.offsets[nodes[i]]; e < csr.offsets[nodes[i] + 1]; e++) {
+                if (csr.targets[e] == nodes[i + 1]) best = Math.min(best, w[e]);
+            }
+            c += best;
+        }
+        return c;
+    }
+
+    // Runs the tasks on the pool and returns their non-null results in task order
+    private List<Path> parallel(List<Supplier<Path>> tasks) {
+        if (tasks.size() == 1) {
+            Path p = tasks.get(0).get();
+            return p == null ? Collections.emptyList() : Collections.singletonList(p);
+        }
+        try {
+            return pool.submit(() -> tasks.parallelStream().map(Supplier::get).filter(Objects::nonNull)
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("k-shortest-paths search interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("k-shortest-paths search failed", e.getCause());
+        }
+    }
+}
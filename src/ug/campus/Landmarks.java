@@ -0,0 +1,142 @@
+package ug.campus;
+
+import java.util.*;
+
+/**
+ * Landmark distances for ALT (A*, landmarks, triangle inequality) search.
+ * For every landmark L we keep d(L, v) and d(v, L) for all nodes, which gives
+ * the lower bound d(v, t) >= max(d(v, L) - d(t, L), d(L, t) - d(L, v)).
+ */
+public final class Landmarks {
+    public enum Strategy {
+        /** Uniformly random nodes (seeded, reproducible). */
+        RANDOM,
+        /** Greedy farthest-point: each new landmark maximises its road distance to the chosen ones. */
+        FARTHEST,
+        /** Nodes farthest from the graph centre in equal angular sectors, i.e. spread around the border. */
+        PLANAR
+    }
+
+    private final CsrGraph csr;
+    public final int[] landmarks;     // dense indices
+    private final double[][] from;    // from[l][v] = d(L, v)
+    private final double[][] to;      // to[l][v]   = d(v, L)
+
+    private Landmarks(CsrGraph csr, int[] landmarks, double[][] from, double[][] to) {
+        this.csr = csr;
+        this.landmarks = landmarks;
+        this.from = from;
+        this.to = to;
+    }
+
+    public static Landmarks build(CsrGraph csr, int count, Strategy strategy) {
+        count = Math.min(count, csr.n);
+        int[] chosen;
+        switch (strategy) {
+            case RANDOM: chosen = pickRandom(csr, count); break;
+            case PLANAR: chosen = pickPlanar(csr, count); break;
+            default: chosen = pickFarthest(csr, count); break;
+        }
+        SearchContext ctx = new SearchContext(csr.n);
+        double[][] from = new double[chosen.length][];
+        double[][] to = new double[chosen.length][];
+        for (int i = 0; i < chosen.length; i++) {
+            from[i] = oneToAll(csr, chosen[i], ctx);
+            to[i] = oneToAll(csr.reversed(), chosen[i], ctx);
+        }
+        return new Landmarks(csr, chosen, from, to);
+    }
+
+    /** Admissible and consistent lower bound on d(v, t) for dense indices; 0 when nothing is known. */
+    public double lowerBound(int v, int t) {
+        double best = 0;
+        for (int i = 0; i < landmarks.length; i++) {
+            double[] f = from[i], r = to[i];
+            // skip landmarks that cannot see both nodes
+            if (r[v] < Double.POSITIVE_INFINITY && r[t] < Double.POSITIVE_INFINITY) best = Math.max(best, r[v] - r[t]);
+            if (f[v] < Double.POSITIVE_INFINITY && f[t] < Double.POSITIVE_INFINITY) best = Math.max(best, f[t] - f[v]);
+        }
+        return best;
+    }
+
+    public boolean builtFor(CsrGraph g) {
+        return g == csr;
+    }
+
+    // Full Dijkstra tree from s, as a dense distance array
+    static double[] oneToAll(CsrGraph g, int s, SearchContext ctx) {
+        double[] d = new double[g.n];
+        Arrays.fill(d, Double.POSITIVE_INFINITY);
+        ctx.reset();
+        ctx.set(s, 0.0, -1);
+        ctx.heap.insertOrDecrease(s, 0.0);
+        while (!ctx.heap.isEmpty()) {
+            int u = ctx.heap.pollMin();
+            double du = ctx.dist(u);
+            d[u] = du;
+            for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                int v = g.targets[e];
+                double alt = du + g.dist[e];
+                if (alt < ctx.dist(v)) {
+                    ctx.set(v, alt, u);
+                    ctx.heap.insertOrDecrease(v, alt);
+                }
+            }
+        }
+        return d;
+    }
+
+    private static int[] pickRandom(CsrGraph csr, int count) {
+        Random rnd = new Random(42);
+        LinkedHashSet<Integer> picked = new LinkedHashSet<>();
+        while (picked.size() < count) picked.add(rnd.nextInt(csr.n));
+        return picked.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] pickFarthest(CsrGraph csr, int count) {
+        SearchContext ctx = new SearchContext(csr.n);
+        // start from the node farthest from an arbitrary node, then keep maximising the min distance
+        double[] seed = oneToAll(csr, 0, ctx);
+        int first = argMaxFinite(seed);
+        int[] chosen = new int[count];
+        chosen[0] = first;
+        double[] minDist = oneToAll(csr, first, ctx);
+        for (int i = 1; i < count; i++) {
+            int next = argMaxFinite(minDist); // chosen nodes sit at 0
+            chosen[i] = next;
+            double[] d = oneToAll(csr, next, ctx);
+            for (int v = 0; v < csr.n; v++) minDist[v] = Math.min(minDist[v], d[v]);
+        }
+        return chosen;
+    }
+
+    private static int argMaxFinite(double[] d) {
+        int best = 0;
+        double bestD = -1;
+        for (int v = 0; v < d.length; v++) {
+            if (d[v] == Double.POSITIVE_INFINITY || d[v] <= bestD) continue;
+            best = v;
+            bestD = d[v];
+        }
+        return best;
+    }
+
+    private static int[] pickPlanar(CsrGraph csr, int count) {
+        double cLat = 0, cLon = 0;
+        for (int v = 0; v < csr.n; v++) { cLat += csr.lat[v]; cLon += csr.lon[v]; }
+        cLat /= csr.n;
+        cLon /= csr.n;
+        int[] best = new int[count];
+        double[] bestR = new double[count];
+        Arrays.fill(best, -1);
+        for (int v = 0; v < csr.n; v++) {
+            double dy = csr.lat[v] - cLat;
+            double dx = (csr.lon[v] - cLon) * Math.cos(Math.toRadians(cLat));
+            double angle = Math.atan2(dy, dx) + Math.PI;
+            int sector = Math.min(count - 1, (int) (angle / (2 * Math.PI) * count));
+            double r = dx * dx + dy * dy;
+            if (best[sector] == -1 || r > bestR[sector]) { best[sector] = v; bestR[sector] = r; }
+        }
+        return Arrays.stream(best).filter(v -> v >= 0).toArray();
+    }
+}
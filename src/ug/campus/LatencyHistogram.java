@@ -0,0 +1,75 @@
+package ug.campus;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets (the HdrHistogram
+ * layout): values below 64 ns get their own bucket, above that every power of
+ * two is split into 32 sub-buckets, so any recorded value is known to within
+ * about 3%. Recording is one atomic increment; readers see a consistent
+ * enough picture without stopping writers.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_BITS = 42; // ~73 minutes in nanoseconds; longer values land in the last bucket
+    private static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        total.increment();
+        sum.add(nanos);
+        long m = max.get();
+        while (nanos > m && !max.compareAndSet(m, nanos)) m = max.get();
+    }
+
+    static int bucket(long v) {
+        if (v < 2 * SUB) return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        int i = (shift + 1) * SUB + (int) ((v >>> shift) & (SUB - 1));
+        return Math.min(i, BUCKETS - 1);
+    }
+
+    // Largest value that falls into bucket i
+    static long upperBound(int i) {
+        if (i < 2 * SUB) return i;
+        int shift = i / SUB - 1;
+        return ((long) (SUB + i % SUB) << shift) + (1L << shift) - 1;
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public double mean() {
+        long n = total.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /** Smallest bucket bound at or below which at least the given fraction (0..1) of values lie; 0 when empty. */
+    public long percentile(double fraction) {
+        long n = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) n += snapshot[i] = counts.get(i);
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+}
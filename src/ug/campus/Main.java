@@ -4,29 +4,31 @@ import java.io.*;
 import java.util.*;
 
 public class Main {
+    // Search radius when snapping POIs onto the road graph
+    static final double SNAP_METERS = 200.0;
+
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("server")) {
+            RoutingServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("roadbatch")) {
+            roadBatch(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         Scanner sc = new Scanner(System.in);
         // drive-only mode
         String mode = "drive";
 
         // Load drive road graph
         String baseMode = "drive";
-        String nodesFile = "data/road_" + baseMode + "_nodes.csv";
-        String edgesFile = "data/road_" + baseMode + "_edges.csv";
-        File nf = new File(nodesFile);
-        File ef = new File(edgesFile);
-        if (!nf.exists() || !ef.exists()) {
-            System.out.println("Missing road graph files for drive mode. Please run: python scripts/build_road_graph.py --geojson <file> --mode drive");
-            return;
-        }
-        Graph graph = RoadGraphLoader.load(nodesFile, edgesFile);
-        System.out.println("Loaded road graph (drive) nodes=" + graph.nodes.size());
-    // Load POIs for landmark detection
-    Graph poiGraph = new Graph();
-    loadNodes(poiGraph, "data/nodes.csv");
-    System.out.println("Loaded POIs: " + poiGraph.nodes.size());
-
-        RouteFinder finder = new RouteFinder(graph);
+        GraphSnapshot data = loadRoadData(baseMode);
+        if (data == null) return;
+        CsrGraph road = data.road;
+        Graph poiGraph = data.pois;
+        RouteFinder finder = newRouteFinder(road, baseMode);
+        // landmark keywords match POI names and types
+        finder.useViaPoints(poiGraph, SNAP_METERS);
         System.out.print("Enter source name: ");
         String srcName = sc.nextLine();
         System.out.print("Enter destination name: ");
@@ -80,12 +82,14 @@ public class Main {
             return;
         }
         List<List<Integer>> routes = new ArrayList<>();
+        long searchStart = System.nanoTime();
         if (!keyword.isEmpty()) {
             List<Integer> route = finder.routeWithLandmark(src, dest, keyword);
             if (!route.isEmpty()) routes.add(route);
         } else {
             routes.add(finder.dijkstra(src, dest));
         }
+        System.out.printf("Search: %.1f ms, %d nodes settled\n", (System.nanoTime() - searchStart) / 1e6, finder.lastSettledCount());
         
         // Filter out empty routes
         routes.removeIf(List::isEmpty);
@@ -108,16 +112,10 @@ public class Main {
         List<String> landmarks = new ArrayList<>();
         final double LANDMARK_RADIUS = 30.0; // meters
         for (int pid : bestPath) {
-            Node roadNode = graph.nodes.get(pid);
-            if (roadNode == null) continue;
-            double bestD = LANDMARK_RADIUS + 1;
-            Node bestPoi = null;
-            for (Node poi : poiGraph.nodes.values()) {
-                if (poi.name == null) continue;
-                double d = haversine(roadNode.lat, roadNode.lon, poi.lat, poi.lon);
-                if (d < bestD) { bestD = d; bestPoi = poi; }
-            }
-            if (bestPoi != null && bestD <= LANDMARK_RADIUS) {
+            int ri = road.indexOf(pid);
+            if (ri < 0) continue;
+            Node bestPoi = poiGraph.spatialIndex().nearest(road.lat[ri], road.lon[ri], LANDMARK_RADIUS);
+            if (bestPoi != null && bestPoi.name != null) {
                 String nm = nameOrPlaceholder(bestPoi);
                 if (!nm.equals(nameOrPlaceholder(srcNode)) && !nm.equals(nameOrPlaceholder(destNode))) {
                     if (!landmarks.contains(nm)) landmarks.add(nm);
@@ -140,103 +138,124 @@ public class Main {
         }
     }
 
-    static void loadNodes(Graph graph, String file) throws Exception {
-        BufferedReader br = new BufferedReader(new FileReader(file));
-        String line = br.readLine();
-        while ((line = br.readLine()) != null) {
-            String[] t = parseCSVLine(line);
-            if (t.length < 5) continue; // Skip malformed lines
-            int id;
-            try { id = Integer.parseInt(t[0]); } catch (NumberFormatException nfe) { continue; }
-            String name = t[1];
-            double lat = Double.parseDouble(t[2]);
-            double lon = Double.parseDouble(t[3]);
-            String type = t[4];
-            if (name == null || name.trim().isEmpty()) {
-                if (type != null && !type.trim().isEmpty()) name = "Unnamed " + type.trim();
-                else name = "Unnamed-" + id;
+    /**
+     * Loads the road graph and POIs for a mode: the mapped binary snapshot while it is newer than
+     * the CSVs (java ug.campus.GraphSnapshot), otherwise the CSVs. Returns null if the files are missing.
+     */
+    static GraphSnapshot loadRoadData(String baseMode) throws Exception {
+        String nodesFile = "data/road_" + baseMode + "_nodes.csv";
+        String edgesFile = "data/road_" + baseMode + "_edges.csv";
+        File nf = new File(nodesFile);
+        File ef = new File(edgesFile);
+        File poiFile = new File("data/nodes.csv");
+        File snapFile = new File("data/road_" + baseMode + ".graph");
+        RoutingEvents.GraphLoad event = new RoutingEvents.GraphLoad();
+        event.begin();
+        long start = System.nanoTime();
+        GraphSnapshot data = null;
+        if (snapFile.exists() && snapFile.lastModified() >= Math.max(poiFile.lastModified(), Math.max(nf.lastModified(), ef.lastModified()))) {
+            try {
+                data = GraphSnapshot.open(snapFile, false);
+                System.out.println("Loaded graph snapshot: " + snapFile.getPath());
+            } catch (IOException e) {
+                System.out.println("Ignoring " + snapFile.getPath() + ": " + e.getMessage());
             }
-            graph.addNode(new Node(id, name, lat, lon, type));
         }
-        br.close();
+        if (data == null) {
+            if (!nf.exists() || !ef.exists()) {
+                System.out.println("Missing road graph files for " + baseMode + " mode. Please run: python scripts/build_road_graph.py --geojson <file> --mode " + baseMode);
+                return null;
+            }
+            CsrGraph road = RoadGraphLoader.loadCsr(nodesFile, edgesFile);
+            // Load POIs for landmark detection
+            Graph poiGraph = new Graph();
+            loadNodes(poiGraph, poiFile.getPath());
+            data = new GraphSnapshot(road, poiGraph);
+            event.source = "csv";
+        } else {
+            event.source = "snapshot";
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.mode = baseMode;
+            event.nodes = data.road.n;
+            event.edges = data.road.m;
+            event.pois = data.pois.nodes.size();
+            event.commit();
+        }
+        System.out.printf("Loaded road graph (%s) nodes=%d in %.0f ms%n", baseMode, data.road.n, (System.nanoTime() - start) / 1e6);
+        System.out.println("Loaded POIs: " + data.pois.nodes.size());
+        return data;
     }
-    
-    static String[] parseCSVLine(String line) {
-        java.util.List<String> result = new java.util.ArrayList<>();
-        boolean inQuotes = false;
-        StringBuilder current = new StringBuilder();
-        
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            if (c == '"') {
-                inQuotes = !inQuotes;
-            } else if (c == ',' && !inQuotes) {
-                result.add(current.toString());
-                current = new StringBuilder();
-            } else {
-                current.append(c);
+
+    // RouteFinder for the road graph, using the preprocessed contraction hierarchy when one has been built
+    static RouteFinder newRouteFinder(CsrGraph road, String baseMode) {
+        RouteFinder finder = new RouteFinder(road);
+        File chFile = new File("data/road_" + baseMode + ".ch");
+        if (chFile.exists()) {
+            try {
+                finder.useContractionHierarchy(ContractionHierarchy.load(chFile, road));
+                System.out.println("Loaded contraction hierarchy: " + chFile.getPath());
+            } catch (IOException e) {
+                System.out.println("Ignoring " + chFile.getPath() + ": " + e.getMessage());
+            }
+        }
+        return finder;
+    }
+
+    static void loadNodes(Graph graph, String file) throws Exception {
+        try (CsvReader r = CsvReader.open(file)) {
+            r.next(); // header
+            while (r.next()) {
+                if (r.fieldCount() < 5) { r.malformed("expected id,name,lat,lon,type"); continue; }
+                try {
+                    int id = r.getInt(0);
+                    String name = r.getString(1);
+                    double lat = r.getDouble(2);
+                    double lon = r.getDouble(3);
+                    String type = r.getString(4);
+                    if (name == null || name.trim().isEmpty()) {
+                        if (type != null && !type.trim().isEmpty()) name = "Unnamed " + type.trim();
+                        else name = "Unnamed-" + id;
+                    }
+                    graph.addNode(new Node(id, name, lat, lon, type));
+                } catch (NumberFormatException e) {
+                    r.malformed("bad number: " + e.getMessage());
+                }
             }
+            r.reportProblems();
         }
-        result.add(current.toString());
-        return result.toArray(new String[0]);
     }
 
     static void loadEdges(Graph graph, String file) throws Exception {
-        BufferedReader br = new BufferedReader(new FileReader(file));
-        String line = br.readLine();
-        while ((line = br.readLine()) != null) {
-            String[] t = line.split(",");
-            int fromId = Integer.parseInt(t[0]);
-            int toId = Integer.parseInt(t[1]);
-            double dist = Double.parseDouble(t[2]);
-            double speed = Double.parseDouble(t[3]);
-            boolean undirected = t[4].equals("1");
-            graph.addEdge(new Edge(fromId, toId, dist, speed, undirected));
+        try (CsvReader r = CsvReader.open(file)) {
+            r.next(); // header
+            while (r.next()) {
+                if (r.fieldCount() < 5) { r.malformed("expected fromId,toId,distanceMeters,speedKph,undirected"); continue; }
+                try {
+                    int fromId = r.getInt(0);
+                    int toId = r.getInt(1);
+                    double dist = r.getDouble(2);
+                    double speed = r.getDouble(3);
+                    boolean undirected = r.fieldEquals(4, "1");
+                    if (!graph.nodes.containsKey(fromId) || !graph.nodes.containsKey(toId)) {
+                        r.malformed("unknown node " + (graph.nodes.containsKey(fromId) ? toId : fromId));
+                        continue;
+                    }
+                    graph.addEdge(new Edge(fromId, toId, dist, speed, undirected));
+                } catch (NumberFormatException e) {
+                    r.malformed("bad number: " + e.getMessage());
+                }
+            }
+            r.reportProblems();
         }
-        br.close();
     }
 
     // --- Enhanced disambiguation logic ---
     static int resolveNode(Graph graph, String rawQuery, Integer otherNodeId, Scanner sc) {
-        if (rawQuery == null || rawQuery.trim().isEmpty()) return -1;
-        String q = normalizeName(rawQuery);
-
-        // Collect candidates using normalized names: exact, startsWith, contains (in that priority)
-        List<Node> exact = new ArrayList<>();
-        List<Node> starts = new ArrayList<>();
-        List<Node> contains = new ArrayList<>();
-        for (Node n : graph.nodes.values()) {
-            if (n.name == null || n.name.isEmpty()) continue;
-            String ln = normalizeName(n.name);
-            if (ln.equals(q)) exact.add(n);
-            else if (ln.startsWith(q)) starts.add(n);
-            else if (ln.contains(q)) contains.add(n);
-        }
-        List<Node> candidates = !exact.isEmpty() ? exact : !starts.isEmpty() ? starts : contains;
+        List<Node> candidates = rankCandidates(graph, rawQuery, otherNodeId);
         if (candidates.isEmpty()) return -1;
-        if (candidates.size() == 1) return candidates.get(0).id;
-
-    // Collapse near-duplicate candidates (same normalized base within 60m)
-    candidates = clusterCandidates(candidates, 60.0);
-
-    // If we know the other endpoint, rank by geographic distance to it
-        if (otherNodeId != null && graph.nodes.containsKey(otherNodeId)) {
-            Node other = graph.nodes.get(otherNodeId);
-            candidates.sort(Comparator.comparingDouble(c -> haversine(c.lat, c.lon, other.lat, other.lon)));
-        } else {
-            // Otherwise sort alphabetically for determinism
-            candidates.sort(Comparator.comparing(n -> n.name.toLowerCase()));
-        }
-
-        // If top two are very close (< 40m) keep both; else just pick top automatically
-        if (candidates.size() > 1 && otherNodeId != null) {
-            Node best = candidates.get(0);
-            Node second = candidates.get(1);
-            double d = haversine(best.lat, best.lon, second.lat, second.lon);
-            if (d > 40) {
-                return best.id; // confident pick
-            }
-        }
+        if (isConfident(candidates, otherNodeId)) return candidates.get(0).id;
 
         // Interactive choice
         System.out.println("Multiple matches for '" + rawQuery + "':");
@@ -260,6 +279,41 @@ public class Main {
         return candidates.get(idx - 1).id;
     }
 
+    // Ranked candidates for a query (best first), without any console interaction
+    static List<Node> rankCandidates(Graph graph, String rawQuery, Integer otherNodeId) {
+        if (rawQuery == null || rawQuery.trim().isEmpty()) return new ArrayList<>();
+
+        // Candidates from the name index: exact, startsWith, contains (in that priority)
+        List<Node> candidates = new ArrayList<>(graph.nameIndex().lookup(rawQuery));
+        if (candidates.size() <= 1) return candidates;
+
+    // Collapse near-duplicate candidates (same normalized base within 60m)
+    candidates = clusterCandidates(candidates, 60.0);
+
+    // If we know the other endpoint, rank by geographic distance to it
+        if (otherNodeId != null && graph.nodes.containsKey(otherNodeId)) {
+            Node other = graph.nodes.get(otherNodeId);
+            SpatialIndex.sortByDistance(candidates, other.lat, other.lon);
+        } else {
+            // Otherwise sort alphabetically for determinism
+            candidates.sort(Comparator.comparing(n -> n.name.toLowerCase()));
+        }
+        return candidates;
+    }
+
+    // True when the first ranked candidate can be picked without asking
+    static boolean isConfident(List<Node> candidates, Integer otherNodeId) {
+        if (candidates.size() == 1) return true;
+        // If top two are very close (< 40m) keep both; else just pick top automatically
+        if (candidates.size() > 1 && otherNodeId != null) {
+            Node best = candidates.get(0);
+            Node second = candidates.get(1);
+            double d = haversine(best.lat, best.lon, second.lat, second.lon);
+            return d > 40;
+        }
+        return false;
+    }
+
     static double haversine(double lat1, double lon1, double lat2, double lon2) {
         double R = 6371000.0;
         double p1 = Math.toRadians(lat1), p2 = Math.toRadians(lat2);
@@ -322,6 +376,9 @@ public class Main {
         return t;
     }
 
+    private static final java.util.regex.Pattern NON_ALNUM = java.util.regex.Pattern.compile("[^a-z0-9 ]");
+    private static final java.util.regex.Pattern WHITESPACE = java.util.regex.Pattern.compile("\\s+");
+
     static String normalizeName(String name) {
         if (name == null) return "";
         String n = name.toLowerCase();
@@ -329,70 +386,115 @@ public class Main {
         n = n.replace("extension", "");
         n = n.replace("fountain", "");
         n = n.replace("branch", "");
-        n = n.replaceAll("[^a-z0-9 ]", "");
-        n = n.replaceAll("\\s+", " ").trim();
+        n = NON_ALNUM.matcher(n).replaceAll("");
+        n = WHITESPACE.matcher(n).replaceAll(" ").trim();
         return n;
     }
 
-    // Collect up to `max` candidate nodes matching a textual query (non-interactive)
+    // Collect up to `max` candidate nodes matching a textual query (non-interactive),
+    // falling back to typo-tolerant suggestions when nothing matches literally
     static List<Node> collectCandidates(Graph graph, String rawQuery, int max) {
-        List<Node> results = new ArrayList<>();
-        if (rawQuery == null || rawQuery.trim().isEmpty()) return results;
-        String q = normalizeName(rawQuery);
-        // priority: exact, startsWith, contains (working on normalized names)
-        for (Node n : graph.nodes.values()) {
-            if (n.name == null) continue;
-            String ln = normalizeName(n.name);
-            if (ln.equals(q)) results.add(n);
-        }
-        if (results.size() >= max) return results.subList(0, Math.min(max, results.size()));
-        for (Node n : graph.nodes.values()) {
-            if (n.name == null) continue;
-            String ln = normalizeName(n.name);
-            if (ln.startsWith(q) && !results.contains(n)) results.add(n);
-        }
-        if (results.size() >= max) return results.subList(0, Math.min(max, results.size()));
-        for (Node n : graph.nodes.values()) {
-            if (n.name == null) continue;
-            String ln = normalizeName(n.name);
-            if (ln.contains(q) && !results.contains(n)) results.add(n);
-        }
-        return results.size() > max ? results.subList(0, max) : results;
+        if (rawQuery == null || rawQuery.trim().isEmpty()) return new ArrayList<>();
+        return graph.nameIndex().candidates(rawQuery, max);
     }
 
     // --- POI snapping and batch distance export ---
     static Map<Integer,Integer> snapPOIs(Graph pois, Graph road, double maxMeters) {
+        return snapPOIs(pois, road.spatialIndex(), maxMeters);
+    }
+
+    /** Snaps POIs onto the largest strongly connected component only, so every snapped pair has a route both ways. */
+    static Map<Integer,Integer> snapToMainComponent(Graph pois, CsrGraph road, Components components, double maxMeters) {
+        return snapPOIs(pois, SpatialIndex.of(road, components.inMainComponent()), maxMeters);
+    }
+
+    static Map<Integer,Integer> snapPOIs(Graph pois, SpatialIndex index, double maxMeters) {
         Map<Integer,Integer> mapping = new HashMap<>();
         for (Node p : pois.nodes.values()) {
-            int bestId = -1; double bestDist = maxMeters;
-            for (Node r : road.nodes.values()) {
-                double d = haversine(p.lat, p.lon, r.lat, r.lon);
-                if (d < bestDist) { bestDist = d; bestId = r.id; }
-            }
-            if (bestId != -1) mapping.put(p.id, bestId);
+            Node r = index.nearest(p.lat, p.lon, maxMeters);
+            if (r != null && haversine(p.lat, p.lon, r.lat, r.lon) < maxMeters) mapping.put(p.id, r.id);
         }
         return mapping;
     }
 
     static void exportBatchDistances(Graph pois, Graph road, Map<Integer,Integer> snap, String outCsv) throws Exception {
-        RouteFinder rf = new RouteFinder(road);
-        List<Node> list = new ArrayList<>(pois.nodes.values());
-        list.sort(Comparator.comparingInt(n -> n.id));
-        try (java.io.PrintWriter pw = new java.io.PrintWriter(new java.io.File(outCsv), java.nio.charset.StandardCharsets.UTF_8)) {
-            pw.println("fromId,toId,straightMeters,roadMeters,ratio");
-            for (int i = 0; i < list.size(); i++) {
-                Node a = list.get(i);
-                Integer ra = snap.get(a.id); if (ra == null) continue;
-                for (int j = i+1; j < list.size(); j++) {
-                    Node b = list.get(j);
-                    Integer rb = snap.get(b.id); if (rb == null) continue;
-                    double straight = haversine(a.lat, a.lon, b.lat, b.lon);
-                    double roadDist = rf.totalDistance(rf.dijkstra(ra, rb));
-                    if (roadDist <= 0) continue;
-                    double ratio = roadDist / (straight > 0 ? straight : roadDist);
-                    pw.printf(Locale.US, "%d,%d,%.1f,%.1f,%.2f%n", a.id, b.id, straight, roadDist, ratio);
+        BatchExporter exporter = new BatchExporter(new RouteFinder(road), pois, snap, Runtime.getRuntime().availableProcessors());
+        exportBatchDistances(exporter, outCsv, BatchExporter.Format.CSV, false);
+    }
+
+    static BatchExporter.Result exportBatchDistances(BatchExporter exporter, String out, BatchExporter.Format format,
+                                                     boolean resume) throws IOException {
+        RoutingEvents.BatchExport event = new RoutingEvents.BatchExport();
+        event.begin();
+        long start = System.nanoTime();
+        BatchExporter.Result r = exporter.export(out, format, resume);
+        event.end();
+        if (event.shouldCommit()) {
+            event.output = out;
+            event.pois = exporter.pois();
+            event.snapped = exporter.snappedPois();
+            event.sources = exporter.searchSources();
+            event.rows = r.rows;
+            event.chunks = r.chunks;
+            event.resumedChunks = r.resumedChunks;
+            event.commit();
+        }
+        System.out.printf("Exported %d pairs to %s in %.0f ms%s%n", r.rows, out, (System.nanoTime() - start) / 1e6,
+                r.resumedChunks > 0 ? " (resumed after " + r.resumedChunks + " of " + r.chunks + " chunks)" : "");
+        return r;
+    }
+
+    /**
+     * roadbatch [walk|drive|both] [--format=csv|gz|bin] [--threads=N] [--restart]
+     * Writes data/batch_distances_<mode>.csv (or .csv.gz / .bin); asks for the mode when none is given.
+     * An interrupted export resumes from its checkpoint unless --restart is given.
+     */
+    static void roadBatch(String[] args) throws Exception {
+        String usage = "Usage: roadbatch [walk|drive|both] [--format=csv|gz|bin] [--threads=N] [--restart]";
+        List<String> modes = new ArrayList<>();
+        BatchExporter.Format format = BatchExporter.Format.CSV;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean resume = true;
+        for (String a : args) {
+            if (a.equals("walk") || a.equals("drive")) modes.add(a);
+            else if (a.equals("both")) modes.addAll(Arrays.asList("walk", "drive"));
+            else if (a.equals("--restart")) resume = false;
+            else if (a.startsWith("--threads=")) {
+                try {
+                    threads = Integer.parseInt(a.substring("--threads=".length()));
+                } catch (NumberFormatException e) {
+                    threads = 0;
                 }
+                if (threads < 1) {
+                    System.out.println("Bad thread count in " + a + " (a positive integer)");
+                    System.out.println(usage);
+                    return;
+                }
+            } else if (a.startsWith("--format=")) {
+                switch (a.substring("--format=".length())) {
+                    case "csv": format = BatchExporter.Format.CSV; break;
+                    case "gz": format = BatchExporter.Format.CSV_GZIP; break;
+                    case "bin": format = BatchExporter.Format.BINARY; break;
+                    default: System.out.println("Unknown format in " + a + " (csv, gz or bin)"); return;
+                }
+            } else {
+                System.out.println(usage);
+                return;
             }
         }
+        if (modes.isEmpty()) {
+            System.out.print("Mode (walk/drive/both) [drive]: ");
+            String m = new Scanner(System.in).nextLine().trim().toLowerCase();
+            if (m.equals("both")) modes.addAll(Arrays.asList("walk", "drive"));
+            else modes.add(m.equals("walk") ? "walk" : "drive");
+        }
+        for (String mode : modes) {
+            GraphSnapshot data = loadRoadData(mode);
+            if (data == null) continue;
+            RouteFinder finder = new RouteFinder(data.road);
+            Map<Integer,Integer> snap = snapToMainComponent(data.pois, data.road, finder.components(), SNAP_METERS);
+            BatchExporter exporter = new BatchExporter(finder, data.pois, snap, threads);
+            exportBatchDistances(exporter, "data/batch_distances_" + mode + format.extension, format, resume);
+        }
     }
 }
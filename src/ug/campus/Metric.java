@@ -0,0 +1,81 @@
+package ug.campus;
+
+/**
+ * Routing cost profile: one precomputed weight per CSR edge slot, so searches
+ * read a primitive array instead of calling back per edge.
+ *
+ * minCostPerMeter is the smallest weight/length ratio over all edges; scaling
+ * the straight-line distance by it keeps the A* estimate admissible (for the
+ * time profile it is 1 / top speed). A profile that never costs less than the
+ * edge length (distanceBounded) can also use the landmark distance bounds.
+ *
+ * A {@link WeightOverlay} publishes re-weighted copies of a profile; they keep
+ * its name and point back to it through base.
+ */
+public final class Metric {
+    public static final String DISTANCE = "distance";
+    public static final String TIME = "time";
+
+    /** Cost of one edge slot, evaluated once per slot when a custom metric is built. */
+    public interface EdgeCost {
+        double cost(CsrGraph csr, int e);
+    }
+
+    public final String name;
+    final CsrGraph csr;
+    final double[] weight;
+    final double minCostPerMeter;
+    final boolean distanceBounded; // weight >= edge length on every slot
+    final Metric base;             // the registered profile this one was derived from (itself if none)
+
+    private Metric(String name, CsrGraph csr, double[] weight, Metric base) {
+        this.name = name;
+        this.csr = csr;
+        this.weight = weight;
+        this.base = base == null ? this : base;
+        double min = Double.POSITIVE_INFINITY;
+        boolean bounded = true;
+        for (int e = 0; e < weight.length; e++) {
+            if (!(weight[e] >= 0)) throw new IllegalArgumentException("Metric '" + name + "' has negative or NaN weight on edge slot " + e);
+            if (csr.dist[e] > 0) min = Math.min(min, weight[e] / csr.dist[e]);
+            bounded &= weight[e] >= csr.dist[e];
+        }
+        this.minCostPerMeter = Double.isInfinite(min) ? 0 : min;
+        this.distanceBounded = bounded;
+    }
+
+    private Metric(String name, CsrGraph csr, double[] weight) {
+        this(name, csr, weight, null);
+    }
+
+    // Same profile with replaced slot weights (see WeightOverlay)
+    Metric withWeights(double[] weight) {
+        return new Metric(name, csr, weight, base);
+    }
+
+    /** Edge length in metres (shares the graph's array). */
+    public static Metric distance(CsrGraph csr) {
+        return new Metric(DISTANCE, csr, csr.dist);
+    }
+
+    /** Travel time in seconds at each edge's speed. */
+    public static Metric time(CsrGraph csr) {
+        double[] w = new double[csr.m];
+        for (int e = 0; e < csr.m; e++) w[e] = csr.travelSeconds(e);
+        return new Metric(TIME, csr, w);
+    }
+
+    public static Metric custom(String name, CsrGraph csr, EdgeCost cost) {
+        double[] w = new double[csr.m];
+        for (int e = 0; e < csr.m; e++) w[e] = cost.cost(csr, e);
+        return new Metric(name, csr, w);
+    }
+
+    public double weight(int e) {
+        return weight[e];
+    }
+
+    public boolean builtFor(CsrGraph g) {
+        return csr == g;
+    }
+}
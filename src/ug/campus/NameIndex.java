@@ -0,0 +1,255 @@
+package ug.campus;
+
+import java.util.*;
+
+/**
+ * Name lookup structures built once per node set:
+ * - dictionary from normalized name to nodes (exact matches)
+ * - sorted key array searched as a flattened prefix trie (startsWith matches)
+ * - character trigram inverted index (substring matches, similarity ranking)
+ * - BK-tree over normalized names for bounded edit-distance ("did you mean") lookups
+ * Node lists are returned in ascending id order, as the old linear scans did.
+ */
+public final class NameIndex {
+    private final Map<Integer, String> normalized = new HashMap<>();
+    private final Map<String, List<Node>> byName = new HashMap<>();
+    private final String[] sortedKeys;
+    private final Map<String, int[]> trigramPostings = new HashMap<>(); // trigram -> key ordinals
+    private final Map<String, Integer> keyOrdinal = new HashMap<>();
+    private final BkNode bkRoot;
+
+    public NameIndex(Collection<Node> nodes) {
+        List<Node> sorted = new ArrayList<>(nodes);
+        sorted.sort(Comparator.comparingInt(n -> n.id));
+        for (Node n : sorted) {
+            if (n.name == null || n.name.isEmpty()) continue;
+            String key = Main.normalizeName(n.name);
+            normalized.put(n.id, key);
+            byName.computeIfAbsent(key, k -> new ArrayList<>()).add(n);
+        }
+        sortedKeys = byName.keySet().toArray(new String[0]);
+        Arrays.sort(sortedKeys);
+        Map<String, List<Integer>> postings = new HashMap<>();
+        BkNode root = null;
+        for (int i = 0; i < sortedKeys.length; i++) {
+            String key = sortedKeys[i];
+            keyOrdinal.put(key, i);
+            for (String g : trigrams(key)) postings.computeIfAbsent(g, x -> new ArrayList<>()).add(i);
+            if (root == null) root = new BkNode(key);
+            else root.add(key);
+        }
+        for (Map.Entry<String, List<Integer>> e : postings.entrySet()) {
+            trigramPostings.put(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).distinct().toArray());
+        }
+        bkRoot = root;
+    }
+
+    /** Normalized form of a node's name as computed at build time. */
+    public String normalizedName(Node n) {
+        String key = normalized.get(n.id);
+        return key != null ? key : Main.normalizeName(n.name);
+    }
+
+    public List<Node> exact(String rawQuery) {
+        return nodesFor(Collections.singletonList(Main.normalizeName(rawQuery)));
+    }
+
+    /** Nodes whose normalized name starts with the query but is not equal to it. */
+    public List<Node> startingWith(String rawQuery) {
+        String q = Main.normalizeName(rawQuery);
+        List<String> keys = new ArrayList<>();
+        int i = lowerBound(q);
+        for (; i < sortedKeys.length && sortedKeys[i].startsWith(q); i++) {
+            if (!sortedKeys[i].equals(q)) keys.add(sortedKeys[i]);
+        }
+        return nodesFor(keys);
+    }
+
+    /** Nodes whose normalized name contains the query but does not start with it. */
+    public List<Node> containing(String rawQuery) {
+        String q = Main.normalizeName(rawQuery);
+        List<String> keys = new ArrayList<>();
+        for (int k : substringCandidates(q)) {
+            String key = sortedKeys[k];
+            if (key.contains(q) && !key.startsWith(q)) keys.add(key);
+        }
+        return nodesFor(keys);
+    }
+
+    /** First non-empty tier of exact, startsWith, contains matches (the resolveNode rule). */
+    public List<Node> lookup(String rawQuery) {
+        List<Node> r = exact(rawQuery);
+        if (r.isEmpty()) r = startingWith(rawQuery);
+        if (r.isEmpty()) r = containing(rawQuery);
+        return r;
+    }
+
+    /** Up to max matches: exact, then startsWith, then contains, topped up with typo-tolerant suggestions. */
+    public List<Node> candidates(String rawQuery, int max) {
+        LinkedHashSet<Node> out = new LinkedHashSet<>();
+        if (rawQuery == null || rawQuery.trim().isEmpty()) return new ArrayList<>();
+        addUpTo(out, exact(rawQuery), max);
+        addUpTo(out, startingWith(rawQuery), max);
+        addUpTo(out, containing(rawQuery), max);
+        addUpTo(out, suggest(rawQuery, max), max);
+        return new ArrayList<>(out);
+    }
+
+    /**
+     * Typo-tolerant suggestions ranked by edit distance, then trigram similarity:
+     * names within a length-scaled edit distance (BK-tree) plus names sharing enough trigrams.
+     */
+    public List<Node> suggest(String rawQuery, int max) {
+        String q = Main.normalizeName(rawQuery);
+        if (q.isEmpty() || bkRoot == null) return new ArrayList<>();
+        int tolerance = Math.max(1, Math.min(3, q.length() / 4));
+        Map<String, Integer> edit = new HashMap<>();
+        bkRoot.search(q, tolerance, edit);
+        Map<String, Double> similarity = new HashMap<>();
+        Set<String> qGrams = trigrams(q);
+        Map<Integer, Integer> shared = new HashMap<>();
+        for (String g : qGrams) {
+            int[] post = trigramPostings.get(g);
+            if (post == null) continue;
+            for (int k : post) shared.merge(k, 1, Integer::sum);
+        }
+        for (Map.Entry<Integer, Integer> e : shared.entrySet()) {
+            String key = sortedKeys[e.getKey()];
+            double jaccard = e.getValue() / (double) (qGrams.size() + trigrams(key).size() - e.getValue());
+            if (jaccard >= 0.3 || edit.containsKey(key)) similarity.put(key, jaccard);
+        }
+        Set<String> keys = new HashSet<>(edit.keySet());
+        keys.addAll(similarity.keySet());
+        List<String> ranked = new ArrayList<>(keys);
+        ranked.sort(Comparator.<String>comparingInt(k -> edit.getOrDefault(k, Integer.MAX_VALUE))
+                .thenComparing(k -> -similarity.getOrDefault(k, 0.0))
+                .thenComparing(k -> k));
+        List<Node> out = new ArrayList<>();
+        for (String k : ranked) {
+            for (Node n : byName.get(k)) {
+                if (out.size() >= max) return out;
+                out.add(n);
+            }
+        }
+        return out;
+    }
+
+    private static void addUpTo(Collection<Node> out, List<Node> more, int max) {
+        for (Node n : more) {
+            if (out.size() >= max) return;
+            out.add(n);
+        }
+    }
+
+    // Nodes of the given keys, merged into ascending id order
+    private List<Node> nodesFor(List<String> keys) {
+        List<Node> out = new ArrayList<>();
+        for (String k : keys) {
+            List<Node> l = byName.get(k);
+            if (l != null) out.addAll(l);
+        }
+        if (keys.size() > 1) out.sort(Comparator.comparingInt(n -> n.id));
+        return out;
+    }
+
+    private int lowerBound(String q) {
+        int lo = 0, hi = sortedKeys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedKeys[mid].compareTo(q) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Key ordinals that may contain q: intersection of its trigram postings, or all keys for short queries
+    private int[] substringCandidates(String q) {
+        if (q.length() < 3) {
+            int[] all = new int[sortedKeys.length];
+            for (int i = 0; i < all.length; i++) all[i] = i;
+            return all;
+        }
+        int[] result = null;
+        for (String g : trigrams(q)) {
+            int[] post = trigramPostings.get(g);
+            if (post == null) return new int[0];
+            result = result == null ? post : intersect(result, post);
+            if (result.length == 0) break;
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else { out[k++] = a[i]; i++; j++; }
+        }
+        return Arrays.copyOf(out, k);
+    }
+
+    private static Set<String> trigrams(String s) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= s.length(); i++) grams.add(s.substring(i, i + 3));
+        return grams;
+    }
+
+    /** Levenshtein distance, giving up (returning limit + 1) once it must exceed limit. */
+    static int editDistance(String a, String b, int limit) {
+        if (Math.abs(a.length() - b.length()) > limit) return limit + 1;
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) prev[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (rowMin > limit) return limit + 1;
+            int[] t = prev; prev = cur; cur = t;
+        }
+        return Math.min(prev[b.length()], limit + 1);
+    }
+
+    // Burkhard-Keller tree: children keyed by edit distance to this node's word
+    private static final class BkNode {
+        final String word;
+        final Map<Integer, BkNode> children = new HashMap<>();
+
+        BkNode(String word) {
+            this.word = word;
+        }
+
+        void add(String w) {
+            BkNode node = this;
+            while (true) {
+                int d = editDistance(node.word, w, Integer.MAX_VALUE - 1);
+                if (d == 0) return;
+                BkNode child = node.children.get(d);
+                if (child == null) {
+                    node.children.put(d, new BkNode(w));
+                    return;
+                }
+                node = child;
+            }
+        }
+
+        void search(String q, int tolerance, Map<String, Integer> out) {
+            Deque<BkNode> stack = new ArrayDeque<>();
+            stack.push(this);
+            while (!stack.isEmpty()) {
+                BkNode node = stack.pop();
+                int d = editDistance(node.word, q, Integer.MAX_VALUE - 1);
+                if (d <= tolerance) out.put(node.word, d);
+                for (Map.Entry<Integer, BkNode> c : node.children.entrySet()) {
+                    if (Math.abs(c.getKey() - d) <= tolerance) stack.push(c.getValue());
+                }
+            }
+        }
+    }
+}
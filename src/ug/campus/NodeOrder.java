@@ -0,0 +1,217 @@
+package ug.campus;
+
+import java.util.*;
+
+/**
+ * Orders for the dense node indices of a {@link CsrGraph}. Searches touch a
+ * node's labels (dist/prev/stamp), its offsets and its edge slots, so they run
+ * faster when the nodes near each other on the map also sit near each other in
+ * those arrays. build_road_graph.py numbers nodes in the order it first meets
+ * each coordinate, which scatters them once an extract no longer fits in cache.
+ *
+ * Renumbering only moves dense indices: external ids stay in {@link CsrGraph#ids},
+ * so files, POI snapping and every public API keep speaking ids. Saved artifacts
+ * (contraction hierarchies, batch checkpoints) are tied to the order through the
+ * graph fingerprint and must be rebuilt with the same order; graph snapshots
+ * record their order and are renumbered to {@link #DEFAULT} when opened.
+ */
+public enum NodeOrder {
+    /** Ascending external id (the order CsrGraph builds). */
+    ID,
+    /** Position along a Hilbert curve over the bounding box: spatial neighbours get close indices. */
+    HILBERT,
+    /** Reverse Cuthill-McKee: breadth-first by degree, reversed; keeps edge endpoints close in index. */
+    RCM;
+
+    /** The order the loaders give road graphs (RoadGraphLoader.loadCsr, Graph.csr, snapshots). */
+    public static final NodeOrder DEFAULT = HILBERT;
+
+    private static final int HILBERT_BITS = 16;
+
+    /** order[k] is the current dense index that becomes index k. */
+    public int[] of(CsrGraph g) {
+        switch (this) {
+            case HILBERT: return hilbert(g);
+            case RCM: return reverseCuthillMcKee(g);
+            default: {
+                // the current indices sorted by id, so ID also undoes an earlier renumbering
+                long[] key = new long[g.n];
+                for (int i = 0; i < g.n; i++) key[i] = ((long) g.ids[i] << 32) | i;
+                Arrays.sort(key);
+                int[] order = new int[g.n];
+                for (int k = 0; k < g.n; k++) order[k] = (int) key[k];
+                return order;
+            }
+        }
+    }
+
+    /** The graph renumbered in this order. */
+    public CsrGraph apply(CsrGraph g) {
+        return g.renumbered(of(g));
+    }
+
+    private static int[] hilbert(CsrGraph g) {
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < g.n; i++) {
+            minLat = Math.min(minLat, g.lat[i]);
+            maxLat = Math.max(maxLat, g.lat[i]);
+            minLon = Math.min(minLon, g.lon[i]);
+            maxLon = Math.max(maxLon, g.lon[i]);
+        }
+        int side = 1 << HILBERT_BITS;
+        double sx = maxLon > minLon ? (side - 1) / (maxLon - minLon) : 0;
+        double sy = maxLat > minLat ? (side - 1) / (maxLat - minLat) : 0;
+        // curve position in the high bits, current index (id order) breaks ties
+        long[] key = new long[g.n];
+        for (int i = 0; i < g.n; i++) {
+            int x = (int) ((g.lon[i] - minLon) * sx), y = (int) ((g.lat[i] - minLat) * sy);
+            key[i] = (hilbertIndex(x, y, side) << 31) | i;
+        }
+        Arrays.sort(key);
+        int[] order = new int[g.n];
+        for (int k = 0; k < g.n; k++) order[k] = (int) (key[k] & Integer.MAX_VALUE);
+        return order;
+    }
+
+    // Distance of cell (x, y) along the Hilbert curve filling a side x side grid
+    static long hilbertIndex(int x, int y, int side) {
+        long d = 0;
+        for (int s = side >>> 1; s > 0; s >>>= 1) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = side - 1 - x;
+                    y = side - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /*
+     * Cuthill-McKee on the undirected view (out- and in-edges), one component at a
+     * time from a pseudo-peripheral node, neighbours taken by ascending degree;
+     * the whole order is then reversed.
+     */
+    private static int[] reverseCuthillMcKee(CsrGraph g) {
+        CsrGraph r = g.reversed();
+        int n = g.n;
+        int[] degree = new int[n];
+        for (int i = 0; i < n; i++) degree[i] = g.degree(i) + r.degree(i);
+        int[] order = new int[n], level = new int[n];
+        boolean[] placed = new boolean[n];
+        int[] buf = new int[16];
+        int count = 0;
+        for (int root = 0; root < n; root++) {
+            if (placed[root]) continue;
+            int start = peripheral(g, r, degree, root, level);
+            int head = count;
+            order[count++] = start;
+            placed[start] = true;
+            while (head < count) {
+                int u = order[head++];
+                int k = 0;
+                for (CsrGraph h : new CsrGraph[] { g, r }) {
+                    for (int e = h.offsets[u]; e < h.offsets[u + 1]; e++) {
+                        int v = h.targets[e];
+                        if (placed[v]) continue;
+                        placed[v] = true;
+                        if (k == buf.length) buf = Arrays.copyOf(buf, k * 2);
+                        buf[k++] = v;
+                    }
+                }
+                sortByDegree(buf, k, degree);
+                System.arraycopy(buf, 0, order, count, k);
+                count += k;
+            }
+        }
+        for (int i = 0, j = n - 1; i < j; i++, j--) {
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        return order;
+    }
+
+    // George-Liu: repeat BFS from the lowest-degree node of the last level while the depth grows
+    private static int peripheral(CsrGraph g, CsrGraph r, int[] degree, int root, int[] level) {
+        int start = root, depth = -1;
+        int[] queue = new int[16];
+        while (true) {
+            // BFS over start's component; level is reset for exactly the nodes visited
+            int size = 0;
+            queue[size++] = start;
+            level[start] = 1;
+            int last = 0;
+            for (int head = 0; head < size; head++) {
+                int u = queue[head];
+                last = level[u];
+                for (CsrGraph h : new CsrGraph[] { g, r }) {
+                    for (int e = h.offsets[u]; e < h.offsets[u + 1]; e++) {
+                        int v = h.targets[e];
+                        if (level[v] != 0) continue;
+                        level[v] = level[u] + 1;
+                        if (size == queue.length) queue = Arrays.copyOf(queue, size * 2);
+                        queue[size++] = v;
+                    }
+                }
+            }
+            int next = start;
+            for (int i = 0; i < size; i++) {
+                int v = queue[i];
+                if (level[v] == last && (next == start || degree[v] < degree[next])) next = v;
+            }
+            for (int i = 0; i < size; i++) level[queue[i]] = 0;
+            if (last <= depth) return start;
+            depth = last;
+            start = next;
+        }
+    }
+
+    // Insertion sort of a node's new neighbours by (degree, index); lists are short
+    private static void sortByDegree(int[] a, int k, int[] degree) {
+        for (int i = 1; i < k; i++) {
+            int v = a[i], j = i - 1;
+            while (j >= 0 && (degree[a[j]] > degree[v] || (degree[a[j]] == degree[v] && a[j] > v))) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = v;
+        }
+    }
+
+    /**
+     * Locality of a graph's current order: the mean index distance between the two
+     * ends of an edge slot, and the share of slots whose ends fall within one 64-byte
+     * cache line of a double[] label array (8 indices).
+     */
+    public static String locality(CsrGraph g) {
+        long gap = 0, near = 0;
+        for (int u = 0; u < g.n; u++) {
+            for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                int d = Math.abs(g.targets[e] - u);
+                gap += d;
+                if (d < 8) near++;
+            }
+        }
+        return String.format(Locale.US, "mean edge index gap %.1f, %.1f%% of edges within 8 indices",
+                g.m == 0 ? 0.0 : (double) gap / g.m, g.m == 0 ? 0.0 : 100.0 * near / g.m);
+    }
+
+    /** Prints the locality of each order for a mode's road graph. */
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "drive";
+        CsrGraph g = RoadGraphLoader.loadCsr("data/road_" + mode + "_nodes.csv", "data/road_" + mode + "_edges.csv", ID);
+        for (NodeOrder order : values()) {
+            long t0 = System.nanoTime();
+            CsrGraph r = order.apply(g);
+            System.out.printf("%-8s %s (renumbered in %.1f ms)%n", order, locality(r), (System.nanoTime() - t0) / 1e6);
+        }
+    }
+}
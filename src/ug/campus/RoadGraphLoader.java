@@ -1,40 +1,99 @@
 package ug.campus;
 
 import java.io.*;
+import java.util.*;
 
 /** Loader for road graph built by build_road_graph.py */
 public class RoadGraphLoader {
+    /** Placeholder name given to road nodes (they have no names in the CSV). */
+    public static String nodeName(int id) {
+        return "road-" + id;
+    }
+
+    // Receives parsed rows; lets the Graph and CSR loaders share one parsing loop
+    private interface Sink {
+        void node(int id, double lat, double lon);
+        boolean hasNode(int id);
+        void edge(int fromId, int toId, double distanceMeters, double speedKph, boolean undirected, String highway);
+    }
+
     public static Graph load(String nodesCsv, String edgesCsv) throws Exception {
         Graph g = new Graph();
-        // Load road nodes (id,lat,lon)
-        try (BufferedReader br = new BufferedReader(new FileReader(nodesCsv))) {
-            String line = br.readLine(); // header
-            while ((line = br.readLine()) != null) {
-                String[] t = line.split(",");
-                if (t.length < 3) continue;
-                int id;
-                try { id = Integer.parseInt(t[0]); } catch (NumberFormatException e) { continue; }
-                double lat = Double.parseDouble(t[1]);
-                double lon = Double.parseDouble(t[2]);
+        read(nodesCsv, edgesCsv, new Sink() {
+            public void node(int id, double lat, double lon) {
                 // Use placeholder name
-                g.addNode(new Node(id, "road-"+id, lat, lon, "road"));
+                g.addNode(new Node(id, nodeName(id), lat, lon, "road"));
+            }
+            public boolean hasNode(int id) {
+                return g.nodes.containsKey(id);
+            }
+            public void edge(int a, int b, double dist, double speed, boolean undirected, String highway) {
+                g.addEdge(new Edge(a, b, dist, speed, undirected, highway));
+            }
+        });
+        // Build the flat routing arrays once, up front
+        g.csr();
+        return g;
+    }
+
+    /** Streams the CSVs straight into CSR arrays, without Node/Edge objects, nodes in Hilbert order. */
+    public static CsrGraph loadCsr(String nodesCsv, String edgesCsv) throws IOException {
+        return loadCsr(nodesCsv, edgesCsv, NodeOrder.DEFAULT);
+    }
+
+    /** As above with the dense indices in the given order (see NodeOrder). */
+    public static CsrGraph loadCsr(String nodesCsv, String edgesCsv, NodeOrder order) throws IOException {
+        CsrGraph.Builder b = new CsrGraph.Builder();
+        read(nodesCsv, edgesCsv, new Sink() {
+            public void node(int id, double lat, double lon) {
+                b.addNode(id, lat, lon);
+            }
+            public boolean hasNode(int id) {
+                return b.hasNode(id);
+            }
+            public void edge(int a, int c, double dist, double speed, boolean undirected, String highway) {
+                b.addEdge(a, c, dist, speed, undirected, highway);
             }
+        });
+        CsrGraph g = b.build();
+        return order == NodeOrder.ID ? g : order.apply(g);
+    }
+
+    private static void read(String nodesCsv, String edgesCsv, Sink sink) throws IOException {
+        // Load road nodes (id,lat,lon)
+        try (CsvReader r = CsvReader.open(nodesCsv)) {
+            r.next(); // header
+            while (r.next()) {
+                if (r.fieldCount() < 3) { r.malformed("expected id,lat,lon"); continue; }
+                try {
+                    sink.node(r.getInt(0), r.getDouble(1), r.getDouble(2));
+                } catch (NumberFormatException e) {
+                    r.malformed("bad number: " + e.getMessage());
+                }
+            }
+            r.reportProblems();
         }
-        // Load road edges (fromId,toId,distanceMeters,speedKph,undirected)
-        try (BufferedReader br = new BufferedReader(new FileReader(edgesCsv))) {
-            String line = br.readLine();
-            while ((line = br.readLine()) != null) {
-                String[] t = line.split(",");
-                if (t.length < 5) continue;
-                int a = Integer.parseInt(t[0]);
-                int b = Integer.parseInt(t[1]);
-                double dist = Double.parseDouble(t[2]);
-                double speed = Double.parseDouble(t[3]);
-                boolean undirected = t[4].equals("1");
-                if (!g.nodes.containsKey(a) || !g.nodes.containsKey(b)) continue;
-                g.addEdge(new Edge(a,b,dist,speed,undirected));
+        // Load road edges (fromId,toId,distanceMeters,speedKph,undirected[,highway])
+        Map<String, String> classes = new HashMap<>(); // one String per highway class, not per row
+        try (CsvReader r = CsvReader.open(edgesCsv)) {
+            r.next();
+            while (r.next()) {
+                if (r.fieldCount() < 5) { r.malformed("expected fromId,toId,distanceMeters,speedKph,undirected"); continue; }
+                try {
+                    int a = r.getInt(0);
+                    int b = r.getInt(1);
+                    double dist = r.getDouble(2);
+                    double speed = r.getDouble(3);
+                    boolean undirected = r.fieldEquals(4, "1");
+                    String highway = r.fieldCount() > 5 ? r.getString(5).trim() : "";
+                    highway = highway.isEmpty() ? null : classes.computeIfAbsent(highway, h -> h);
+                    if (!sink.hasNode(a) || !sink.hasNode(b)) { r.malformed("unknown node " + (sink.hasNode(a) ? b : a)); continue; }
+                    sink.edge(a, b, dist, speed, undirected, highway);
+                } catch (NumberFormatException e) {
+                    r.malformed("bad number: " + e.getMessage());
+                }
             }
+            r.reportProblems();
         }
-        return g;
     }
 }
@@ -0,0 +1,237 @@
+package ug.campus;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+
+/**
+ * Bounded cache of computed routes keyed by (src, dest, mode, metric, keyword).
+ *
+ * Entries are spread over independently locked segments, each a LinkedHashMap in
+ * access order, and are bounded both by count and by an estimate of the bytes
+ * they hold. LRU evicts the least recently used entry; LFU looks at the few
+ * least recently used entries and evicts the one with the fewest hits, so a
+ * burst of one-off queries does not push out the popular pairs.
+ * {@link #invalidateAll()} must be called whenever the graph changes; weight
+ * overlays drop just the entries they can affect through invalidateIf. Routes
+ * are put with the overlay version they were computed on, and a put older than
+ * the last repair of its mode is dropped, so a search that straddles an overlay
+ * change cannot re-insert a route the repair would have removed.
+ */
+public final class RouteCache {
+    public enum Policy { LRU, LFU }
+
+    private static final int SEGMENTS = 16;
+    private static final int LFU_SAMPLE = 8;
+    private static final long ENTRY_OVERHEAD = 96; // key, map entry and array headers, roughly
+
+    private final Policy policy;
+    private final int maxEntriesPerSegment;
+    private final long maxBytesPerSegment;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public RouteCache(int maxEntries, long maxBytes, Policy policy) {
+        if (maxEntries <= 0 || maxBytes <= 0) throw new IllegalArgumentException("Cache bounds must be positive");
+        this.policy = policy;
+        this.maxEntriesPerSegment = Math.max(1, maxEntries / SEGMENTS);
+        this.maxBytesPerSegment = Math.max(1, maxBytes / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment();
+    }
+
+    /** Cache key; keyword is null for plain shortest-path queries. */
+    public static final class Key {
+        final int src, dest;
+        final String mode, metric, keyword;
+        private final int hash;
+
+        public Key(int src, int dest, String mode, String metric, String keyword) {
+            this.src = src;
+            this.dest = dest;
+            this.mode = mode;
+            this.metric = metric;
+            this.keyword = keyword;
+            this.hash = Objects.hash(src, dest, mode, metric, keyword);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return src == k.src && dest == k.dest && Objects.equals(mode, k.mode)
+                    && Objects.equals(metric, k.metric) && Objects.equals(keyword, k.keyword);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        final int[] path;
+        int uses;
+
+        Entry(int[] path) {
+            this.path = path;
+        }
+
+        long bytes() {
+            return ENTRY_OVERHEAD + 4L * path.length;
+        }
+    }
+
+    private static final class Segment {
+        final LinkedHashMap<Key, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+        final Map<String, Long> repaired = new HashMap<>(); // mode -> overlay version of its last repair
+        long bytes;
+    }
+
+    /** Cached path (as a fresh mutable list) or null on a miss. */
+    public List<Integer> get(Key key) {
+        Segment seg = segmentFor(key);
+        Entry e;
+        synchronized (seg) {
+            e = seg.map.get(key);
+            if (e != null) e.uses++;
+        }
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        List<Integer> path = new ArrayList<>(e.path.length);
+        for (int id : e.path) path.add(id);
+        return path;
+    }
+
+    public void put(Key key, List<Integer> path) {
+        put(key, path, Long.MAX_VALUE);
+    }
+
+    // As put, unless the key's mode was repaired for an overlay version newer than the route's
+    void put(Key key, List<Integer> path, long version) {
+        Entry e = new Entry(path.stream().mapToInt(Integer::intValue).toArray());
+        if (e.bytes() > maxBytesPerSegment) return; // would evict everything else
+        Segment seg = segmentFor(key);
+        synchronized (seg) {
+            Long repaired = seg.repaired.get(key.mode);
+            if (repaired != null && version < repaired) return;
+            Entry old = seg.map.put(key, e);
+            if (old != null) seg.bytes -= old.bytes();
+            seg.bytes += e.bytes();
+            while (seg.map.size() > maxEntriesPerSegment || seg.bytes > maxBytesPerSegment) {
+                Entry victim = seg.map.remove(victim(seg, key));
+                seg.bytes -= victim.bytes();
+                evictions.increment();
+            }
+        }
+    }
+
+    // Oldest entry (LRU), or the least used of the oldest few (LFU); never the entry just added
+    private Key victim(Segment seg, Key added) {
+        Key best = null;
+        int bestUses = Integer.MAX_VALUE;
+        int seen = 0;
+        for (Map.Entry<Key, Entry> me : seg.map.entrySet()) {
+            if (me.getKey().equals(added)) continue;
+            if (me.getValue().uses < bestUses) {
+                best = me.getKey();
+                bestUses = me.getValue().uses;
+            }
+            if (policy == Policy.LRU || ++seen == LFU_SAMPLE) break;
+        }
+        return best;
+    }
+
+    /** Drops every entry (graph or weights changed). */
+    public void invalidateAll() {
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                seg.map.clear();
+                seg.bytes = 0;
+            }
+        }
+        invalidations.increment();
+    }
+
+    // Drops the entries whose key and path (external ids) pass the test; returns how many
+    int invalidateIf(BiPredicate<Key, int[]> test) {
+        return invalidateIf(null, 0, test);
+    }
+
+    // As above for an overlay change to version of mode: later puts of routes from older versions are dropped
+    int invalidateIf(String mode, long version, BiPredicate<Key, int[]> test) {
+        int removed = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                if (version > 0) seg.repaired.merge(mode, version, Math::max);
+                Iterator<Map.Entry<Key, Entry>> it = seg.map.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<Key, Entry> me = it.next();
+                    if (!test.test(me.getKey(), me.getValue().path)) continue;
+                    seg.bytes -= me.getValue().bytes();
+                    it.remove();
+                    removed++;
+                }
+            }
+        }
+        invalidations.increment();
+        return removed;
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    public int size() {
+        int n = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                n += seg.map.size();
+            }
+        }
+        return n;
+    }
+
+    public long bytes() {
+        long b = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                b += seg.bytes;
+            }
+        }
+        return b;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public long invalidations() {
+        return invalidations.sum();
+    }
+
+    public double hitRate() {
+        long h = hits(), total = h + misses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "RouteCache[%s entries=%d bytes=%d hits=%d misses=%d hitRate=%.3f evictions=%d invalidations=%d]",
+                policy, size(), bytes(), hits(), misses(), hitRate(), evictions(), invalidations());
+    }
+}
@@ -1,161 +1,773 @@
 package ug.campus;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class RouteFinder {
     private Graph graph;
+    private final CsrGraph csr;
+    // One search context per thread, reused across queries
+    private final ThreadLocal<SearchContext> contexts;
+    // Optional preprocessed hierarchy answering plain shortest-path queries
+    private ContractionHierarchy ch;
+    // Optional landmark distances for ALT search
+    private Landmarks landmarks;
+    // Optional cache of dijkstra()/routeWithLandmark() results, shared across finders by mode
+    private RouteCache cache;
+    private String cacheMode;
+    // Cost profiles by name; distance and time are always present
+    private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+    private final Metric distance;
+    private final Metric time;
+    // Component labels for rejecting unreachable pairs without a search
+    private final Components components;
+    // Degree-2 chains collapsed, searched by dijkstra() and one-to-many queries; null to search the full graph
+    private volatile ChainGraph chains;
+    // Runtime closures and speed factors, created on first use
+    private WeightOverlay overlay;
+    // The profiles with the overlay applied, swapped whole on every overlay change
+    private volatile Live live = new Live(0, null);
+    // Second per-thread context for searches that need two label sets at once (via routing)
+    private final ThreadLocal<SearchContext> backwardContexts;
+    // Keyword -> via candidates for routeWithLandmark, built on first use unless set by useViaPoints
+    private ViaIndex via;
+    // Optional per-query latency histograms and search counters
+    private RouteMetrics routeMetrics;
+    private String metricsMode;
 
     public RouteFinder(Graph graph) {
+        this(graph, graph.csr());
+    }
+
+    /** Routes directly on CSR arrays (e.g. from a GraphSnapshot) without Node/Edge objects. */
+    public RouteFinder(CsrGraph csr) {
+        this(null, csr);
+    }
+
+    private RouteFinder(Graph graph, CsrGraph csr) {
         this.graph = graph;
+        this.csr = csr;
+        this.contexts = ThreadLocal.withInitial(() -> new SearchContext(csr.n));
+        this.backwardContexts = ThreadLocal.withInitial(() -> new SearchContext(csr.n));
+        this.components = Components.of(csr);
+        this.chains = ChainGraph.of(csr);
+        this.distance = Metric.distance(csr);
+        this.time = Metric.time(csr);
+        addMetric(distance);
+        addMetric(time);
     }
 
-    // Small helper for priority queue entries
-    private static class PQNode {
-        int id;
-        double priority; // can represent g or f depending on algorithm
-        PQNode(int id, double priority) { this.id = id; this.priority = priority; }
+    public CsrGraph csr() {
+        return csr;
     }
 
-    // Dijkstra's algorithm
-    public List<Integer> dijkstra(int src, int dest) {
-        return dijkstraWithEdgePenalty(src, dest, null);
-    }
-
-    private List<Integer> dijkstraWithEdgePenalty(int src, int dest, java.util.function.Function<Edge, Double> weightFn) {
-        Map<Integer, Double> dist = new HashMap<>();
-        Map<Integer, Integer> prev = new HashMap<>();
-        for (int id : graph.nodes.keySet()) dist.put(id, Double.POSITIVE_INFINITY);
-        dist.put(src, 0.0);
-
-        PriorityQueue<PQNode> pq = new PriorityQueue<>(Comparator.comparingDouble(n -> n.priority));
-        pq.add(new PQNode(src, 0.0));
-        while (!pq.isEmpty()) {
-            PQNode curr = pq.poll();
-            int u = curr.id;
-            // stale entry check
-            if (curr.priority > dist.get(u)) continue;
-            if (u == dest) break;
-            for (Edge e : graph.adj.get(u)) {
-                double w = (weightFn == null) ? e.distanceMeters : weightFn.apply(e);
-                double alt = dist.get(u) + w;
-                if (alt < dist.get(e.toId)) {
-                    dist.put(e.toId, alt);
-                    prev.put(e.toId, u);
-                    pq.add(new PQNode(e.toId, alt));
-                }
+    /** Weak and strong component labels of the graph, computed when the finder is built. */
+    public Components components() {
+        return components;
+    }
+
+    /** The collapsed graph dijkstra() and distancesFrom() search, or null if they search the full graph. */
+    public ChainGraph chains() {
+        return chains;
+    }
+
+    /** Search the given collapsed graph of this graph (built by default), or the full graph when null; paths are the same. */
+    public void useChains(ChainGraph chains) {
+        if (chains != null && chains.csr != csr) throw new IllegalArgumentException("Chains were built for a different graph");
+        this.chains = chains;
+    }
+
+    // Dense indices; true when no search is needed to know there is no path
+    private boolean rejected(int s, int t) {
+        return s < 0 || t < 0 || components.unreachable(s, t);
+    }
+
+    /** Registers a cost profile (e.g. Metric.custom) under its name. */
+    public void addMetric(Metric metric) {
+        if (!metric.builtFor(csr)) throw new IllegalArgumentException("Metric '" + metric.name + "' was built for a different graph");
+        metrics.put(metric.name, metric.base);
+        WeightOverlay o = overlayIfCreated();
+        if (o != null) o.republish();
+    }
+
+    /** Registered profile by name with the current overlay applied, or null. */
+    public Metric metric(String name) {
+        Metric m = metrics.get(name);
+        return m == null ? null : live(m);
+    }
+
+    /** Road closures and speed factors applied to every query from now on; see WeightOverlay. */
+    public synchronized WeightOverlay overlay() {
+        if (overlay == null) overlay = new WeightOverlay(this);
+        return overlay;
+    }
+
+    private synchronized WeightOverlay overlayIfCreated() {
+        return overlay;
+    }
+
+    // One published overlay version and its re-weighted profiles (null while the overlay is empty)
+    private static final class Live {
+        final long version;
+        final Map<String, Metric> profiles;
+
+        Live(long version, Map<String, Metric> profiles) {
+            this.version = version;
+            this.profiles = profiles;
+        }
+    }
+
+    // Current version of a profile: whatever version the caller holds, queries run on the latest weights
+    private Metric live(Metric metric) {
+        return live(live, metric);
+    }
+
+    private static Metric live(Live l, Metric metric) {
+        if (l.profiles == null) return metric.base;
+        Metric m = l.profiles.get(metric.name);
+        return m != null && m.base == metric.base ? m : metric.base;
+    }
+
+    // Called by the overlay under its lock: publish re-weighted profiles, then drop the cached routes the change can affect
+    void overlayChanged(WeightOverlay.State state, WeightOverlay.Change change) {
+        if (state.isEmpty()) {
+            live = new Live(state.version, null);
+        } else {
+            Map<String, Metric> next = new HashMap<>();
+            for (Metric m : metrics.values()) next.put(m.name, state.apply(m));
+            live = new Live(state.version, next);
+        }
+        if (change != null && cache != null) repairCache(change, state.version);
+    }
+
+    /*
+     * Overlay changes only raise costs unless something was reopened or sped up, and
+     * raising the cost of edges a cached route does not use cannot make it worse than
+     * any other route. So entries are kept unless their route uses a changed edge, or
+     * something got cheaper for their profile. Speed factors touch the time profile only.
+     * Routes still being computed on the previous version are refused when they are put.
+     */
+    private void repairCache(WeightOverlay.Change c, long version) {
+        Set<Long> closurePairs = idPairs(c.closureSlots, null);
+        Set<Long> timePairs = idPairs(c.speedSlots, closurePairs);
+        String mode = cacheMode;
+        cache.invalidateIf(mode, version, (key, path) -> {
+            if (!Objects.equals(key.mode, mode)) return false;
+            boolean isTime = Metric.TIME.equals(key.metric);
+            if (c.reopened || (isTime && c.faster)) return true;
+            Set<Long> pairs = isTime ? timePairs : closurePairs;
+            for (int i = 0; i + 1 < path.length && !pairs.isEmpty(); i++) {
+                if (pairs.contains(idPair(path[i], path[i + 1]))) return true;
+            }
+            return false;
+        });
+    }
+
+    // (fromId, toId) of each slot, plus an optional set to include
+    private Set<Long> idPairs(int[] slots, Set<Long> plus) {
+        Set<Long> pairs = plus == null ? new HashSet<>() : new HashSet<>(plus);
+        if (slots.length == 0) return pairs;
+        boolean[] wanted = new boolean[csr.m];
+        for (int e : slots) wanted[e] = true;
+        for (int u = 0; u < csr.n; u++) {
+            for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                if (wanted[e]) pairs.add(idPair(csr.ids[u], csr.ids[csr.targets[e]]));
             }
         }
-        List<Integer> path = new ArrayList<>();
-        if (!prev.containsKey(dest) && dest != src) {
-            return path; // No path found
+        return pairs;
+    }
+
+    private static long idPair(int fromId, int toId) {
+        return ((long) fromId << 32) | (toId & 0xffffffffL);
+    }
+
+    /** Answer dijkstra()/shortestDistance() from a contraction hierarchy built for this graph (null to disable). */
+    public void useContractionHierarchy(ContractionHierarchy ch) {
+        this.ch = ch;
+        invalidateCache(); // ties may now resolve to different paths
+    }
+
+    /** Serve repeated dijkstra()/routeWithLandmark() queries from a cache (null to disable); mode tags this finder's entries. */
+    public void useCache(RouteCache cache, String mode) {
+        this.cache = cache;
+        this.cacheMode = mode;
+    }
+
+    public RouteCache cache() {
+        return cache;
+    }
+
+    /** Must be called when the graph changes (overlay changes repair the cache themselves). */
+    public void invalidateCache() {
+        if (cache != null) cache.invalidateAll();
+    }
+
+    /** Record every query's latency and search counters (null to disable); mode tags this finder's series. */
+    public void useMetrics(RouteMetrics metrics, String mode) {
+        this.routeMetrics = metrics;
+        this.metricsMode = mode;
+    }
+
+    public RouteMetrics routeMetrics() {
+        return routeMetrics;
+    }
+
+    /** Enable ALT search (altStar) with landmarks built for this graph. */
+    public void useLandmarks(Landmarks landmarks) {
+        if (!landmarks.builtFor(csr)) throw new IllegalArgumentException("Landmarks were built for a different graph");
+        this.landmarks = landmarks;
+    }
+
+    public Landmarks useLandmarks(int count, Landmarks.Strategy strategy) {
+        Landmarks lm = Landmarks.build(csr, count, strategy);
+        useLandmarks(lm);
+        return lm;
+    }
+
+    /** Nodes settled by the last search run on the calling thread. */
+    public int lastSettledCount() {
+        return contexts.get().settled;
+    }
+
+    // Dijkstra's algorithm
+    public List<Integer> dijkstra(int src, int dest) {
+        return dijkstra(src, dest, distance);
+    }
+
+    /** Cheapest path under a cost profile. */
+    public List<Integer> dijkstra(int src, int dest, Metric metric) {
+        checkMetric(metric);
+        Live l = live;
+        metric = live(l, metric);
+        RoutingEvents.Query q = RoutingEvents.Query.start();
+        RouteCache.Key key = null;
+        if (cache != null) {
+            key = new RouteCache.Key(src, dest, cacheMode, metric.name, null);
+            List<Integer> hit = cache.get(key);
+            if (hit != null) return finish(q, "cache", metric, src, dest, null, hit);
         }
-        Integer u = dest;
-        while (u != null) {
-            path.add(u);
-            if (u == src) break;
-            u = prev.get(u);
+        List<Integer> path = hierarchyRoute(src, dest, metric);
+        boolean fromHierarchy = path != null;
+        if (!fromHierarchy) path = dijkstraSearch(src, dest, metric.weight);
+        if (key != null) cache.put(key, path, l.version);
+        return fromHierarchy ? finish(q, "ch", metric, src, dest, null, path)
+                : finish(q, "dijkstra", metric, src, dest, contexts.get(), path);
+    }
+
+    /*
+     * The hierarchy is built on edge lengths, so it only answers the distance profile.
+     * Closures only raise costs, so a hierarchy route that avoids every closed edge is
+     * still a shortest one, and no route stays no route; otherwise returns null and the
+     * caller searches the live weights. The hierarchy itself is never rebuilt.
+     */
+    private List<Integer> hierarchyRoute(int src, int dest, Metric metric) {
+        if (ch == null || metric.base.weight != csr.dist) return null;
+        if (rejected(csr.indexOf(src), csr.indexOf(dest))) return new ArrayList<>();
+        List<Integer> path = ch.route(src, dest);
+        if (metric.weight == csr.dist) return path;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            int e = edgeOf(path.get(i), path.get(i + 1));
+            if (e < 0 || metric.weight[e] != csr.dist[e]) return null;
         }
-        Collections.reverse(path);
         return path;
     }
 
+    private List<Integer> shortest(int src, int dest, Metric metric) {
+        List<Integer> path = hierarchyRoute(src, dest, metric);
+        return path != null ? path : dijkstraSearch(src, dest, metric.weight);
+    }
+
+    private List<Integer> dijkstraSearch(int src, int dest, double[] weight) {
+        SearchContext ctx = contexts.get();
+        ctx.reset();
+        int s = csr.indexOf(src);
+        int t = csr.indexOf(dest);
+        if (rejected(s, t)) return new ArrayList<>();
+        ChainGraph cg = chains;
+        if (cg != null) {
+            cg.search(weight, s, new int[] { t }, ctx);
+            return cg.path(weight, ctx, s, t);
+        }
+        IndexedHeap heap = ctx.heap;
+        ctx.set(s, 0.0, -1);
+        heap.insertOrDecrease(s, 0.0);
+        while (!heap.isEmpty()) {
+            int u = heap.pollMin();
+            ctx.settled++;
+            if (u == t) break;
+            double du = ctx.dist(u);
+            for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                double alt = du + weight[e];
+                int v = csr.targets[e];
+                if (alt < ctx.dist(v)) {
+                    ctx.set(v, alt, u);
+                    heap.insertOrDecrease(v, alt);
+                }
+            }
+        }
+        return buildPath(ctx, s, t);
+    }
+
     // A* algorithm
     public List<Integer> aStar(int src, int dest) {
-        Map<Integer, Double> gScore = new HashMap<>(); // g(n)
-        Map<Integer, Integer> prev = new HashMap<>();
-        for (int id : graph.nodes.keySet()) gScore.put(id, Double.POSITIVE_INFINITY);
-        gScore.put(src, 0.0);
-
-        PriorityQueue<PQNode> pq = new PriorityQueue<>(Comparator.comparingDouble(n -> n.priority));
-        pq.add(new PQNode(src, heuristic(src, dest))); // f = g + h (g=0)
-
-        while (!pq.isEmpty()) {
-            PQNode curr = pq.poll();
-            int u = curr.id;
-            double currF = curr.priority;
-            // stale entry: compare to current best f = g + h
-            double currentBestF = gScore.get(u) + heuristic(u, dest);
-            if (currF > currentBestF) continue;
-            if (u == dest) break;
-            for (Edge e : graph.adj.get(u)) {
-                int v = e.toId;
-                double tentativeG = gScore.get(u) + e.distanceMeters;
-                if (tentativeG < gScore.get(v)) {
-                    gScore.put(v, tentativeG);
-                    prev.put(v, u);
-                    double f = tentativeG + heuristic(v, dest);
-                    pq.add(new PQNode(v, f));
+        return aStar(src, dest, distance);
+    }
+
+    /** A* under a cost profile; the straight-line estimate is scaled by the profile's minimum cost per metre. */
+    public List<Integer> aStar(int src, int dest, Metric metric) {
+        checkMetric(metric);
+        metric = live(metric);
+        RoutingEvents.Query q = RoutingEvents.Query.start();
+        return finish(q, "astar", metric, src, dest, contexts.get(), aStarSearch(src, dest, null, metric));
+    }
+
+    // ALT: A* guided by landmark triangle-inequality bounds (falls back to A* without landmarks)
+    public List<Integer> altStar(int src, int dest) {
+        RoutingEvents.Query q = RoutingEvents.Query.start();
+        Metric d = live(distance);
+        return finish(q, "alt", d, src, dest, contexts.get(), aStarSearch(src, dest, landmarks, d));
+    }
+
+    // Landmark bounds are distances, so lm must only be passed with a distance-bounded profile
+    private List<Integer> aStarSearch(int src, int dest, Landmarks lm, Metric metric) {
+        double[] weight = metric.weight;
+        double scale = metric.minCostPerMeter;
+        SearchContext ctx = contexts.get();
+        ctx.reset();
+        int s = csr.indexOf(src);
+        int t = csr.indexOf(dest);
+        if (rejected(s, t)) return new ArrayList<>();
+        IndexedHeap heap = ctx.heap;
+        ctx.set(s, 0.0, -1); // g(n)
+        heap.insertOrDecrease(s, estimate(s, t, lm, scale)); // f = g + h (g=0)
+
+        while (!heap.isEmpty()) {
+            int u = heap.pollMin();
+            ctx.settled++;
+            if (u == t) break;
+            double gu = ctx.dist(u);
+            for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                int v = csr.targets[e];
+                double tentativeG = gu + weight[e];
+                if (tentativeG < ctx.dist(v)) {
+                    ctx.set(v, tentativeG, u);
+                    // a node settled earlier is simply re-queued if it improves
+                    heap.insertOrDecrease(v, tentativeG + estimate(v, t, lm, scale));
+                }
+            }
+        }
+        return buildPath(ctx, s, t);
+    }
+
+    /** Bidirectional Dijkstra: searches from both ends (backward over the reversed graph) until the frontiers meet. */
+    public List<Integer> bidirectionalDijkstra(int src, int dest) {
+        return bidirectional(src, dest, live(distance), false);
+    }
+
+    public List<Integer> bidirectionalDijkstra(int src, int dest, Metric metric) {
+        checkMetric(metric);
+        return bidirectional(src, dest, live(metric), false);
+    }
+
+    /** Bidirectional A* with average potentials (landmark bounds included when ALT is enabled). */
+    public List<Integer> bidirectionalAStar(int src, int dest) {
+        return bidirectional(src, dest, live(distance), true);
+    }
+
+    public List<Integer> bidirectionalAStar(int src, int dest, Metric metric) {
+        checkMetric(metric);
+        return bidirectional(src, dest, live(metric), true);
+    }
+
+    /*
+     * With potentials pf(v) = (h_t(v) - h_s(v)) / 2 and pb = -pf both searches run
+     * Dijkstra on the same non-negative reduced costs, so the usual rule applies:
+     * stop once the two queue minima sum to at least the best meeting distance mu.
+     * Without potentials this is plain bidirectional Dijkstra.
+     */
+    private List<Integer> bidirectional(int src, int dest, Metric metric, boolean potentials) {
+        RoutingEvents.Query q = RoutingEvents.Query.start();
+        List<Integer> path = bidirectionalSearch(src, dest, metric, potentials);
+        return finish(q, potentials ? "biastar" : "bidijkstra", metric, src, dest, contexts.get(), path);
+    }
+
+    private List<Integer> bidirectionalSearch(int src, int dest, Metric metric, boolean potentials) {
+        SearchContext f = contexts.get();
+        SearchContext b = backwardContexts.get();
+        f.reset();
+        b.reset();
+        int s = csr.indexOf(src);
+        int t = csr.indexOf(dest);
+        if (rejected(s, t)) return new ArrayList<>();
+        CsrGraph rev = csr.reversed();
+        double[] fw = metric.weight;
+        Landmarks lm = metric.distanceBounded ? landmarks : null;
+        double scale = metric.minCostPerMeter;
+        f.set(s, 0.0, -1);
+        b.set(t, 0.0, -1);
+        f.heap.insertOrDecrease(s, potentials ? potential(s, s, t, lm, scale) : 0.0);
+        b.heap.insertOrDecrease(t, potentials ? -potential(t, s, t, lm, scale) : 0.0);
+        double mu = s == t ? 0.0 : Double.POSITIVE_INFINITY;
+        int meet = s == t ? s : -1;
+        while (!f.heap.isEmpty() && !b.heap.isEmpty() && f.heap.minKey() + b.heap.minKey() < mu) {
+            boolean forward = f.heap.size() <= b.heap.size();
+            SearchContext c = forward ? f : b, other = forward ? b : f;
+            CsrGraph g = forward ? csr : rev;
+            int u = c.heap.pollMin();
+            c.settled++;
+            double du = c.dist(u);
+            for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                int v = g.targets[e];
+                double alt = du + (forward ? fw[e] : fw[rev.forwardSlot[e]]);
+                if (alt < c.dist(v)) {
+                    c.set(v, alt, u);
+                    double pv = potentials ? potential(v, s, t, lm, scale) : 0.0;
+                    c.heap.insertOrDecrease(v, alt + (forward ? pv : -pv));
+                    if (other.reached(v) && alt + other.dist(v) < mu) {
+                        mu = alt + other.dist(v);
+                        meet = v;
+                    }
                 }
             }
         }
+        f.absorb(b);
+        if (meet < 0) return new ArrayList<>();
+        List<Integer> path = buildPath(f, s, meet);
+        // backward labels point towards dest
+        for (int u = b.prev(meet); u != -1; u = b.prev(u)) path.add(csr.ids[u]);
+        return path;
+    }
+
+    // Forward potential (h_t(v) - h_s(v)) / 2; h_s bounds the distance from s to v
+    private double potential(int v, int s, int t, Landmarks lm, double scale) {
+        double ht = estimate(v, t, lm, scale);
+        double hs = heuristic(s, v) * scale;
+        if (lm != null) hs = Math.max(hs, lm.lowerBound(s, v));
+        return (ht - hs) / 2;
+    }
+
+    // Both bounds are admissible, so their max is too
+    private double estimate(int v, int t, Landmarks lm, double scale) {
+        double h = heuristic(v, t) * scale;
+        return lm == null ? h : Math.max(h, lm.lowerBound(v, t));
+    }
+
+    private <T extends Collection<?>> T finish(RoutingEvents.Query q, String algo, Metric metric, int src, int dest,
+                                                SearchContext ctx, T result) {
+        finish(q, algo, metric, src, dest, ctx, !result.isEmpty());
+        return result;
+    }
+
+    // Ends a query: histograms and counters when metrics are installed, a JFR event when a recording wants one
+    private void finish(RoutingEvents.Query q, String algo, Metric metric, int src, int dest, SearchContext ctx, boolean found) {
+        long nanos = System.nanoTime() - q.startNanos;
+        q.end();
+        RouteMetrics m = routeMetrics;
+        boolean event = q.shouldCommit();
+        if (m == null && !event) return;
+        int settled = ctx == null ? 0 : ctx.settled, labelsSet = ctx == null ? 0 : ctx.labelsSet;
+        int pushes = ctx == null ? 0 : ctx.heap.pushes, decreases = ctx == null ? 0 : ctx.heap.decreases;
+        if (m != null) m.record(algo, metricsMode, nanos, found, settled, labelsSet, pushes, decreases);
+        if (event) {
+            q.algorithm = algo;
+            q.mode = metricsMode;
+            q.metric = metric.name;
+            q.source = src;
+            q.target = dest;
+            q.found = found;
+            q.settled = settled;
+            q.labelsSet = labelsSet;
+            q.heapPushes = pushes;
+            q.decreaseKeys = decreases;
+            q.commit();
+        }
+    }
+
+    // Walk the predecessor labels back from t and translate to external ids
+    private List<Integer> buildPath(SearchContext ctx, int s, int t) {
         List<Integer> path = new ArrayList<>();
-        if (!prev.containsKey(dest) && dest != src) {
+        if (!ctx.reached(t)) {
             return path; // No path found
         }
-        Integer u = dest;
-        while (u != null) {
-            path.add(u);
-            if (u == src) break;
-            u = prev.get(u);
+        for (int u = t; u != -1; u = ctx.prev(u)) {
+            path.add(csr.ids[u]);
+            if (u == s) break;
         }
         Collections.reverse(path);
         return path;
     }
 
-    private double heuristic(int fromId, int toId) {
-        Node a = graph.nodes.get(fromId);
-        Node b = graph.nodes.get(toId);
-        double dLat = Math.toRadians(b.lat - a.lat);
-        double dLon = Math.toRadians(b.lon - a.lon);
+    // Straight-line distance between two dense indices
+    private double heuristic(int from, int to) {
+        double dLat = Math.toRadians(csr.lat[to] - csr.lat[from]);
+        double dLon = Math.toRadians(csr.lon[to] - csr.lon[from]);
         double r = 6371000; // Earth radius in meters
-        double h = Math.sin(dLat/2)*Math.sin(dLat/2) + Math.cos(Math.toRadians(a.lat))*Math.cos(Math.toRadians(b.lat))*Math.sin(dLon/2)*Math.sin(dLon/2);
+        double h = Math.sin(dLat/2)*Math.sin(dLat/2) + Math.cos(Math.toRadians(csr.lat[from]))*Math.cos(Math.toRadians(csr.lat[to]))*Math.sin(dLon/2)*Math.sin(dLon/2);
         double c = 2 * Math.atan2(Math.sqrt(h), Math.sqrt(1-h));
         return r * c;
     }
 
-    // K-alternative routes without mutating base edge distances
+    /** The k shortest loopless routes by distance (Yen's algorithm), shortest first. */
     public List<List<Integer>> kAlternatives(int src, int dest, int k) {
-        List<List<Integer>> routes = new ArrayList<>();
-        Map<Edge, Integer> penaltyCount = new HashMap<>();
-        for (int i = 0; i < k; i++) {
-            List<Integer> path = dijkstraWithEdgePenalty(src, dest, e -> e.distanceMeters + 1000.0 * penaltyCount.getOrDefault(e, 0));
-            if (path.isEmpty()) break;
-            routes.add(path);
-            // increment penalties for edges in path
-            for (int j = 0; j < path.size()-1; j++) {
-                int a = path.get(j);
-                int b = path.get(j+1);
-                for (Edge e : graph.adj.get(a)) {
-                    if (e.toId == b) {
-                        penaltyCount.put(e, penaltyCount.getOrDefault(e, 0) + 1);
-                        break;
-                    }
+        return kShortestPaths(src, dest, k, distance);
+    }
+
+    public List<List<Integer>> kShortestPaths(int src, int dest, int k, Metric metric) {
+        checkMetric(metric);
+        metric = live(metric);
+        RoutingEvents.Query q = RoutingEvents.Query.start();
+        int s = csr.indexOf(src);
+        int t = csr.indexOf(dest);
+        List<List<Integer>> routes = rejected(s, t) ? new ArrayList<>()
+                : toIds(new KShortestPaths(csr, metric.weight, contexts::get, ForkJoinPool.commonPool()).yen(s, t, k));
+        return finish(q, "yen", metric, src, dest, null, routes);
+    }
+
+    /**
+     * Up to k noticeably different routes (penalty method): each found route makes its
+     * edges costlier for the next search; routes longer than maxStretch x the shortest are dropped.
+     */
+    public List<List<Integer>> goodAlternatives(int src, int dest, int k, double maxStretch) {
+        RoutingEvents.Query q = RoutingEvents.Query.start();
+        Metric d = live(distance);
+        int s = csr.indexOf(src);
+        int t = csr.indexOf(dest);
+        List<List<Integer>> routes = rejected(s, t) ? new ArrayList<>()
+                : toIds(new KShortestPaths(csr, d.weight, contexts::get, ForkJoinPool.commonPool()).penalized(s, t, k, maxStretch));
+        return finish(q, "penalty", d, src, dest, null, routes);
+    }
+
+    private List<List<Integer>> toIds(List<KShortestPaths.Path> paths) {
+        List<List<Integer>> routes = new ArrayList<>(paths.size());
+        for (KShortestPaths.Path p : paths) {
+            List<Integer> route = new ArrayList<>(p.nodes.length);
+            for (int v : p.nodes) route.add(csr.ids[v]);
+            routes.add(route);
+        }
+        return routes;
+    }
+
+    /**
+     * One-to-many: a single Dijkstra from src that stops once every target is settled.
+     * Returns distances in target order (+infinity for unknown or unreachable ids).
+     */
+    public double[] distancesFrom(int src, int[] targetIds) {
+        return distancesFrom(src, targetIds, null);
+    }
+
+    // As above; when paths is non-null, also fills in the path (external ids) to each reachable target from the same search
+    double[] distancesFrom(int src, int[] targetIds, int[][] paths) {
+        RoutingEvents.Query q = RoutingEvents.Query.start();
+        Metric d = live(distance);
+        double[] out = new double[targetIds.length];
+        Arrays.fill(out, Double.POSITIVE_INFINITY);
+        SearchContext ctx = contexts.get();
+        ctx.reset();
+        int s = csr.indexOf(src);
+        if (s >= 0) {
+            // unreachable targets are left out, or the search would exhaust the component looking for them
+            int[] targets = new int[targetIds.length];
+            for (int i = 0; i < targetIds.length; i++) {
+                int t = csr.indexOf(targetIds[i]);
+                targets[i] = rejected(s, t) ? -1 : t;
+            }
+            ChainGraph cg = chains;
+            if (cg != null) cg.search(d.weight, s, targets, ctx);
+            else settleAll(csr, d.weight, s, targets, ctx);
+            for (int i = 0; i < targets.length; i++) {
+                int t = targets[i];
+                if (t < 0) continue;
+                out[i] = cg != null ? cg.cost(d.weight, ctx, s, t) : ctx.dist(t);
+                if (paths != null && !Double.isInfinite(out[i])) {
+                    List<Integer> path = cg != null ? cg.path(d.weight, ctx, s, t) : buildPath(ctx, s, t);
+                    paths[i] = path.stream().mapToInt(Integer::intValue).toArray();
                 }
             }
         }
-        return routes;
+        finish(q, "one-to-many", d, src, -1, ctx, s >= 0);
+        return out;
+    }
+
+    // Dijkstra over g from s that stops once every target (dense index, -1 ignored) is settled; labels stay in ctx.
+    // weight is indexed by forward slot, also when g is the reversed graph
+    private static void settleAll(CsrGraph g, double[] weight, int s, int[] targets, SearchContext ctx) {
+        ctx.reset();
+        int[] slot = g.forwardSlot;
+        boolean[] isTarget = new boolean[g.n];
+        int remaining = 0; // distinct targets not yet settled
+        for (int t : targets) {
+            if (t >= 0 && !isTarget[t]) {
+                isTarget[t] = true;
+                remaining++;
+            }
+        }
+        IndexedHeap heap = ctx.heap;
+        ctx.set(s, 0.0, -1);
+        heap.insertOrDecrease(s, 0.0);
+        while (!heap.isEmpty() && remaining > 0) {
+            int u = heap.pollMin();
+            ctx.settled++;
+            if (isTarget[u]) remaining--;
+            double du = ctx.dist(u);
+            for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                int v = g.targets[e];
+                double alt = du + weight[slot == null ? e : slot[e]];
+                if (alt < ctx.dist(v)) {
+                    ctx.set(v, alt, u);
+                    heap.insertOrDecrease(v, alt);
+                }
+            }
+        }
+    }
+
+    /** Nodes reached by a budgeted search: external ids in settle order with their costs. */
+    public static final class Reached {
+        public final int[] ids;
+        public final double[] costs; // non-decreasing
+
+        Reached(int[] ids, double[] costs) {
+            this.ids = ids;
+            this.costs = costs;
+        }
+    }
+
+    /**
+     * One-to-all search from src that stops once the next node would cost more than budget
+     * (metres, seconds, ... depending on the profile).
+     */
+    public Reached reachable(int src, double budget, Metric metric) {
+        checkMetric(metric);
+        metric = live(metric);
+        RoutingEvents.Query q = RoutingEvents.Query.start();
+        SearchContext ctx = contexts.get();
+        ctx.reset();
+        int s = csr.indexOf(src);
+        if (s < 0) {
+            finish(q, "isochrone", metric, src, -1, ctx, false);
+            return new Reached(new int[0], new double[0]);
+        }
+        IndexedHeap heap = ctx.heap;
+        double[] w = metric.weight;
+        int[] ids = new int[16];
+        double[] costs = new double[16];
+        int count = 0;
+        ctx.set(s, 0.0, -1);
+        heap.insertOrDecrease(s, 0.0);
+        while (!heap.isEmpty() && heap.minKey() <= budget) {
+            int u = heap.pollMin();
+            ctx.settled++;
+            double du = ctx.dist(u);
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                costs = Arrays.copyOf(costs, count * 2);
+            }
+            ids[count] = csr.ids[u];
+            costs[count++] = du;
+            for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                int v = csr.targets[e];
+                double alt = du + w[e];
+                if (alt < ctx.dist(v)) {
+                    ctx.set(v, alt, u);
+                    heap.insertOrDecrease(v, alt);
+                }
+            }
+        }
+        finish(q, "isochrone", metric, src, -1, ctx, true);
+        return new Reached(Arrays.copyOf(ids, count), Arrays.copyOf(costs, count));
+    }
+
+    /** Many-to-many distance matrix: one one-to-many search per source, run in parallel on the common pool. */
+    public DistanceMatrix distanceMatrix(int[] sourceIds, int[] targetIds) {
+        return distanceMatrix(sourceIds, targetIds, ForkJoinPool.commonPool());
+    }
+
+    public DistanceMatrix distanceMatrix(int[] sourceIds, int[] targetIds, ForkJoinPool pool) {
+        DistanceMatrix matrix = new DistanceMatrix(sourceIds.clone(), targetIds.clone());
+        try {
+            pool.submit(() -> IntStream.range(0, sourceIds.length).parallel()
+                    .forEach(i -> matrix.setRow(i, distancesFrom(sourceIds[i], targetIds)))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Distance matrix computation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Distance matrix computation failed", e.getCause());
+        }
+        return matrix;
     }
 
     // Diagnostic: compute unpenalized shortest distance only
     public double shortestDistance(int src, int dest) {
+        if (ch != null && live(distance).weight == csr.dist) {
+            double d = ch.distance(src, dest);
+            return Double.isInfinite(d) ? 0 : d;
+        }
         List<Integer> path = dijkstra(src, dest);
         return totalDistance(path);
     }
 
-    // Landmark filter
+    // Landmark filter: shortest route through a node matching the keyword
     public List<Integer> routeWithLandmark(int src, int dest, String keyword) {
-        for (Node node : graph.nodes.values()) {
-            if (node.name.contains(keyword)) {
-                List<Integer> first = dijkstra(src, node.id);
-                List<Integer> second = dijkstra(node.id, dest);
-                if (!first.isEmpty() && !second.isEmpty()) {
-                    first.remove(first.size()-1);
-                    first.addAll(second);
-                    return first;
-                }
+        RoutingEvents.Query q = RoutingEvents.Query.start();
+        Live l = live;
+        RouteCache.Key key = null;
+        if (cache != null) {
+            key = new RouteCache.Key(src, dest, cacheMode, "distance", keyword);
+            List<Integer> hit = cache.get(key);
+            if (hit != null) return finish(q, "cache", distance, src, dest, null, hit);
+        }
+        Metric d = live(l, distance);
+        List<Integer> path = landmarkRoute(src, dest, keyword, d);
+        if (key != null) cache.put(key, path, l.version);
+        return finish(q, "via", d, src, dest, contexts.get(), path);
+    }
+
+    /**
+     * Best via route: over every candidate v matching the keyword, minimise d(src, v) + d(v, dest)
+     * using one forward search from src and one backward search from dest. Falls back to the plain
+     * shortest path when nothing matches (or no match is reachable).
+     */
+    private List<Integer> landmarkRoute(int src, int dest, String keyword, Metric d) {
+        int s = csr.indexOf(src);
+        int t = csr.indexOf(dest);
+        int[] candidates = viaIndex().candidates(keyword);
+        contexts.get().reset(); // counters read zero if the hierarchy answers instead
+        if (rejected(s, t)) return new ArrayList<>();
+        candidates = Arrays.stream(candidates).filter(v -> !rejected(s, v) && !rejected(v, t)).toArray();
+        if (candidates.length == 0) return shortest(src, dest, d);
+        SearchContext fwd = contexts.get();
+        SearchContext bwd = backwardContexts.get();
+        settleAll(csr, d.weight, s, candidates, fwd);
+        settleAll(csr.reversed(), d.weight, t, candidates, bwd);
+        fwd.absorb(bwd);
+        int best = -1;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (int v : candidates) {
+            double c = fwd.dist(v) + bwd.dist(v);
+            if (c < bestCost || (c == bestCost && best >= 0 && csr.ids[v] < csr.ids[best])) {
+                best = v;
+                bestCost = c;
             }
         }
-        return dijkstra(src, dest);
+        if (best < 0) return shortest(src, dest, d);
+        List<Integer> path = buildPath(fwd, s, best);
+        // backward labels point towards dest
+        for (int u = bwd.prev(best); u != -1; u = bwd.prev(u)) path.add(csr.ids[u]);
+        return path;
+    }
+
+    /** Take via-point candidates for routeWithLandmark from these places (by name or type), each snapped to its nearest main-component road node. */
+    public synchronized void useViaPoints(Graph places, double snapMeters) {
+        via = new ViaIndex(csr, places.nodes.values(), Main.snapToMainComponent(places, csr, components, snapMeters));
+        invalidateCache();
+    }
+
+    // Defaults to the road nodes' own names
+    private synchronized ViaIndex viaIndex() {
+        if (via == null) via = ViaIndex.ofRoadNodes(csr, graph);
+        return via;
     }
 
     // Sorting routes by time then distance
@@ -167,20 +779,48 @@ public class RouteFinder {
     public double totalDistance(List<Integer> path) {
         double dist = 0;
         for (int i = 0; i < path.size()-1; i++) {
-            for (Edge e : graph.adj.get(path.get(i))) {
-                if (e.toId == path.get(i+1)) dist += e.distanceMeters;
-            }
+            int e = edgeOf(path.get(i), path.get(i+1));
+            if (e >= 0) dist += csr.dist[e];
         }
         return dist;
     }
 
+    /** Travel time in seconds, with the overlay's speed factors (+infinity across a closed road). */
     public double totalTime(List<Integer> path) {
-        double time = 0;
+        double[] w = live(time).weight;
+        double total = 0;
+        for (int i = 0; i < path.size()-1; i++) {
+            int e = edgeOf(path.get(i), path.get(i+1));
+            if (e >= 0) total += w[e];
+        }
+        return total;
+    }
+
+    /** Cost of a path under a profile (sum over the cheapest edge slot between consecutive ids). */
+    public double pathCost(List<Integer> path, Metric metric) {
+        checkMetric(metric);
+        double cost = 0;
         for (int i = 0; i < path.size()-1; i++) {
-            for (Edge e : graph.adj.get(path.get(i))) {
-                if (e.toId == path.get(i+1)) time += e.distanceMeters / (e.speedKph * 1000 / 3600);
+            int a = csr.indexOf(path.get(i));
+            int b = csr.indexOf(path.get(i+1));
+            if (a < 0 || b < 0) continue;
+            double best = Double.POSITIVE_INFINITY;
+            for (int e = csr.offsets[a]; e < csr.offsets[a + 1]; e++) {
+                if (csr.targets[e] == b) best = Math.min(best, metric.weight[e]);
             }
+            if (best < Double.POSITIVE_INFINITY) cost += best;
         }
-        return time;
+        return cost;
+    }
+
+    private void checkMetric(Metric metric) {
+        if (!metric.builtFor(csr)) throw new IllegalArgumentException("Metric '" + metric.name + "' was built for a different graph");
+    }
+
+    // Edge slot joining two external ids, or -1
+    private int edgeOf(int fromId, int toId) {
+        int a = csr.indexOf(fromId);
+        int b = csr.indexOf(toId);
+        return (a < 0 || b < 0) ? -1 : csr.edgeBetween(a, b);
     }
 }
@@ -0,0 +1,83 @@
+package ug.campus;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-query counters and latency histograms, kept per (algorithm, mode) and
+ * safe to update from any thread without locks. Install on a RouteFinder with
+ * useMetrics; a finder without one only reads the clock twice per query.
+ *
+ * Search counters (settled nodes, labels set, heap pushes and decrease-keys)
+ * come from the query's search contexts. Cache hits, contraction hierarchy
+ * queries and k-path searches run elsewhere and record latency only. The
+ * indexed heap has decrease-key, so there are never stale pops to count.
+ */
+public final class RouteMetrics {
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+    private static final class Series {
+        final String algorithm, mode;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder notFound = new LongAdder();
+        final LongAdder settled = new LongAdder();
+        final LongAdder labelsSet = new LongAdder();
+        final LongAdder pushes = new LongAdder();
+        final LongAdder decreases = new LongAdder();
+
+        Series(String algorithm, String mode) {
+            this.algorithm = algorithm;
+            this.mode = mode;
+        }
+    }
+
+    /** Totals for one (algorithm, mode); latencies in nanoseconds. */
+    public static final class Snapshot {
+        public final String algorithm, mode;
+        public final long queries, notFound;
+        public final long settled, labelsSet, heapPushes, decreaseKeys;
+        public final double meanNanos;
+        public final long p50Nanos, p90Nanos, p99Nanos, maxNanos;
+
+        private Snapshot(Series s) {
+            algorithm = s.algorithm;
+            mode = s.mode;
+            queries = s.latency.count();
+            notFound = s.notFound.sum();
+            settled = s.settled.sum();
+            labelsSet = s.labelsSet.sum();
+            heapPushes = s.pushes.sum();
+            decreaseKeys = s.decreases.sum();
+            meanNanos = s.latency.mean();
+            p50Nanos = s.latency.percentile(0.50);
+            p90Nanos = s.latency.percentile(0.90);
+            p99Nanos = s.latency.percentile(0.99);
+            maxNanos = s.latency.max();
+        }
+    }
+
+    public void record(String algorithm, String mode, long nanos, boolean found,
+                       int settled, int labelsSet, int heapPushes, int decreaseKeys) {
+        String m = mode == null ? "" : mode;
+        Series s = series.computeIfAbsent(algorithm + '/' + m, k -> new Series(algorithm, m));
+        s.latency.record(nanos);
+        if (!found) s.notFound.increment();
+        if (settled > 0) s.settled.add(settled);
+        if (labelsSet > 0) s.labelsSet.add(labelsSet);
+        if (heapPushes > 0) s.pushes.add(heapPushes);
+        if (decreaseKeys > 0) s.decreases.add(decreaseKeys);
+    }
+
+    /** Current totals, ordered by algorithm then mode. */
+    public List<Snapshot> snapshot() {
+        List<Snapshot> out = new ArrayList<>();
+        for (Series s : series.values()) out.add(new Snapshot(s));
+        out.sort(Comparator.comparing((Snapshot s) -> s.algorithm).thenComparing(s -> s.mode));
+        return out;
+    }
+
+    public void reset() {
+        series.clear();
+    }
+}
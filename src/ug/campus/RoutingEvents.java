@@ -0,0 +1,64 @@
+package ug.campus;
+
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder events for routing work. They cost next to nothing unless a
+ * recording enables them (java -XX:StartFlightRecording ...), and a recording
+ * can keep only the slow ones with a threshold, e.g. ug.campus.RouteQuery#threshold=5ms.
+ */
+final class RoutingEvents {
+    private RoutingEvents() {
+    }
+
+    @Name("ug.campus.RouteQuery")
+    @Label("Route Query")
+    @Category({ "UG Campus", "Routing" })
+    @StackTrace(false)
+    static final class Query extends Event {
+        @Label("Algorithm") String algorithm;
+        @Label("Mode") String mode;
+        @Label("Metric") String metric;
+        @Label("Source Id") int source;
+        @Label("Target Id") int target;
+        @Label("Found") boolean found;
+        @Label("Settled Nodes") int settled;
+        @Label("Labels Set") int labelsSet;
+        @Label("Heap Pushes") int heapPushes;
+        @Label("Decrease Keys") int decreaseKeys;
+        transient long startNanos; // for the histograms; transient fields are not recorded
+
+        static Query start() {
+            Query q = new Query();
+            q.startNanos = System.nanoTime();
+            q.begin();
+            return q;
+        }
+    }
+
+    @Name("ug.campus.GraphLoad")
+    @Label("Graph Load")
+    @Category({ "UG Campus", "Loading" })
+    @StackTrace(false)
+    static final class GraphLoad extends Event {
+        @Label("Mode") String mode;
+        @Label("Source") String source; // snapshot or csv
+        @Label("Road Nodes") int nodes;
+        @Label("Road Edge Slots") int edges;
+        @Label("POIs") int pois;
+    }
+
+    @Name("ug.campus.BatchExport")
+    @Label("Batch Distance Export")
+    @Category({ "UG Campus", "Export" })
+    @StackTrace(false)
+    static final class BatchExport extends Event {
+        @Label("Output") String output;
+        @Label("POIs") int pois;
+        @Label("Snapped POIs") int snapped;
+        @Label("Search Sources") int sources;
+        @Label("Rows Written") long rows;
+        @Label("Chunks") int chunks;
+        @Label("Resumed Chunks") int resumedChunks;
+    }
+}
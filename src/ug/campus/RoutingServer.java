@@ -0,0 +1,601 @@
+package ug.campus;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Long-running HTTP/JSON front end over one shared road graph and RouteFinder.
+ *
+ *   GET /route?from=&to=[&via=|&keyword=][&algo=dijkstra|astar|alt|bidijkstra|biastar][&metric=distance|time]
+ *   GET /alternatives?from=&to=[&k=3][&method=yen|penalty]
+ *   GET /matrix?ids=1,2,3          (POI ids, road metres)
+ *   GET /tour?stops=a,b,c[&end=free|last|start]   (visiting order; first stop is the start)
+ *   GET /isochrone?from=&budgets=300,600[&metric=time|distance]   (seconds or metres; GeoJSON outlines)
+ *   GET /nearest?lat=&lon=[&k=5][&radius=500]
+ *   GET /resolve?q=[&near=]
+ *   GET /health
+ *   GET /metrics                  (per algorithm and mode: query counts, latency percentiles, search counters)
+ *   GET /overlay                  (road closures and speed factors in force, with the overlay version)
+ *   POST /overlay?action=close|reopen&from=&to=        (road node ids; both directions)
+ *   POST /overlay?action=scale&factor=&highway=|roads=a-b,c-d   (speed factor for a highway class or roads)
+ *   POST /overlay?action=clear
+ *
+ * from/to/via accept a POI id or a name; keyword routes through the best
+ * place whose name contains it or whose type equals it; ambiguous names are resolved to the
+ * best ranked candidate instead of prompting, and the runners-up are returned
+ * alongside the result. POIs are snapped to their nearest road node in the
+ * main (largest strongly connected) component. Overlay
+ * changes apply to the next query without pausing the ones in flight.
+ *
+ * Connections are handled on virtual threads where the JDK has them (a cached
+ * pool otherwise); the searches themselves run on a fixed pool of one platform
+ * thread per core so each keeps its search context warm, and requests beyond
+ * the queue limit get 503.
+ */
+public final class RoutingServer {
+    private static final int MAX_QUEUED = 4096;
+    private static final int MAX_MATRIX_IDS = 200;
+    private static final int MAX_TOUR_STOPS = 60;
+    private static final int MAX_ALTERNATIVES = 10;
+    private static final int MAX_BUDGETS = 8;
+    private static final double ALTERNATIVE_STRETCH = 1.5;
+    private static final List<String> ALGORITHMS = Arrays.asList("dijkstra", "astar", "alt", "bidijkstra", "biastar");
+    private static final int LANDMARK_COUNT = 8;
+    private static final int CACHE_ENTRIES = 50_000;
+    private static final long CACHE_BYTES = 64L << 20;
+
+    private final CsrGraph road;
+    private final Graph pois;
+    private final RouteFinder finder;
+    private final Map<Integer,Integer> snap; // POI id -> road node id
+    private final ThreadPoolExecutor searchPool;
+    private HttpServer server;
+    private ExecutorService connections;
+
+    public RoutingServer(CsrGraph road, Graph pois, RouteFinder finder) {
+        this.road = road;
+        this.pois = pois;
+        this.finder = finder;
+        this.snap = Main.snapToMainComponent(pois, road, finder.components(), Main.SNAP_METERS);
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.searchPool = new ThreadPoolExecutor(cores, cores, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED), daemonThreads("route-search"));
+        // build the lazy indexes before the first request rather than inside it
+        pois.spatialIndex();
+        pois.nameIndex();
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        connections = connectionExecutor();
+        server.setExecutor(connections);
+        server.createContext("/route", ex -> handle(ex, this::route));
+        server.createContext("/alternatives", ex -> handle(ex, this::alternatives));
+        server.createContext("/matrix", ex -> handle(ex, this::matrix));
+        server.createContext("/tour", ex -> handle(ex, this::tour));
+        server.createContext("/isochrone", ex -> handle(ex, this::isochrone));
+        server.createContext("/nearest", ex -> handle(ex, this::nearest));
+        server.createContext("/resolve", ex -> handle(ex, this::resolve));
+        server.createContext("/health", ex -> handle(ex, this::health));
+        server.createContext("/metrics", ex -> handle(ex, this::metrics));
+        server.createContext("/overlay", ex -> handle(ex, this::overlay, this::changeOverlay));
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(1);
+        connections.shutdown();
+        searchPool.shutdown();
+    }
+
+    // Virtual-thread-per-request executor on JDKs that have it (looked up reflectively so this still compiles on 17)
+    private static ExecutorService connectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(daemonThreads("http"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        return new ThreadFactory() {
+            private int count;
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + "-" + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    // ---- request plumbing ----
+
+    private interface Endpoint {
+        Json handle(Map<String,String> params) throws RequestException;
+    }
+
+    /** Client error reported as {"error": ..., "suggestions": [...]} with the given status. */
+    static final class RequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+        final int status;
+        final List<Node> suggestions;
+
+        RequestException(int status, String message) {
+            this(status, message, Collections.emptyList());
+        }
+
+        RequestException(int status, String message, List<Node> suggestions) {
+            super(message);
+            this.status = status;
+            this.suggestions = suggestions;
+        }
+    }
+
+    private void handle(HttpExchange ex, Endpoint endpoint) throws IOException {
+        handle(ex, endpoint, null);
+    }
+
+    // post is null for read-only endpoints
+    private void handle(HttpExchange ex, Endpoint get, Endpoint post) throws IOException {
+        int status = 200;
+        Json body;
+        try {
+            String method = ex.getRequestMethod();
+            Endpoint endpoint = method.equals("GET") ? get : method.equals("POST") ? post : null;
+            if (endpoint == null) throw new RequestException(405, post == null ? "Only GET is supported" : "Only GET and POST are supported");
+            Map<String,String> params = parseQuery(ex.getRequestURI().getRawQuery());
+            body = searchPool.submit(() -> endpoint.handle(params)).get();
+        } catch (RejectedExecutionException e) {
+            status = 503;
+            body = error("Server busy, try again", Collections.emptyList());
+        } catch (RequestException e) {
+            status = e.status;
+            body = error(e.getMessage(), e.suggestions);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RequestException) {
+                RequestException re = (RequestException) e.getCause();
+                status = re.status;
+                body = error(re.getMessage(), re.suggestions);
+            } else {
+                status = 500;
+                body = error("Internal error: " + e.getCause(), Collections.emptyList());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = 503;
+            body = error("Interrupted", Collections.emptyList());
+        }
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Json error(String message, List<Node> suggestions) {
+        Json j = new Json().obj().field("error", message);
+        if (!suggestions.isEmpty()) {
+            j.key("suggestions").arr();
+            for (Node n : suggestions) poi(j, n);
+            j.endArr();
+        }
+        return j.endObj();
+    }
+
+    static Map<String,String> parseQuery(String raw) {
+        Map<String,String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String k = eq < 0 ? pair : pair.substring(0, eq);
+            String v = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(k, StandardCharsets.UTF_8), URLDecoder.decode(v, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String required(Map<String,String> p, String name) throws RequestException {
+        String v = p.get(name);
+        if (v == null || v.trim().isEmpty()) throw new RequestException(400, "Missing parameter '" + name + "'");
+        return v.trim();
+    }
+
+    private static int intParam(Map<String,String> p, String name, int def) throws RequestException {
+        String v = p.get(name);
+        if (v == null || v.isEmpty()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Parameter '" + name + "' must be an integer: " + v);
+        }
+    }
+
+    private static double doubleParam(Map<String,String> p, String name, Double def) throws RequestException {
+        String v = p.get(name);
+        if (v == null || v.isEmpty()) {
+            if (def == null) throw new RequestException(400, "Missing parameter '" + name + "'");
+            return def;
+        }
+        try {
+            return Double.parseDouble(v.trim());
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Parameter '" + name + "' must be a number: " + v);
+        }
+    }
+
+    // ---- POI resolution ----
+
+    // Ranked POI matches for an id or name; the first entry is the one used
+    private List<Node> resolve(String query, Node other) throws RequestException {
+        try {
+            Node byId = pois.nodes.get(Integer.parseInt(query));
+            if (byId != null) return Collections.singletonList(byId);
+        } catch (NumberFormatException ignored) {
+            // not an id, match by name
+        }
+        List<Node> ranked = Main.rankCandidates(pois, query, other == null ? null : other.id);
+        if (ranked.isEmpty()) {
+            throw new RequestException(404, "No place matches '" + query + "'", Main.collectCandidates(pois, query, 5));
+        }
+        return ranked;
+    }
+
+    private int snapped(Node poi) throws RequestException {
+        Integer r = snap.get(poi.id);
+        if (r == null) throw new RequestException(404, "'" + poi.name + "' is not within " + (int) Main.SNAP_METERS + " m of a road");
+        return r;
+    }
+
+    // ---- endpoints ----
+
+    private Json route(Map<String,String> p) throws RequestException {
+        String algo = p.getOrDefault("algo", "dijkstra");
+        if (!ALGORITHMS.contains(algo)) {
+            throw new RequestException(400, "Unknown algo '" + algo + "' (" + String.join(", ", ALGORITHMS) + ")");
+        }
+        Metric metric = finder.metric(p.getOrDefault("metric", Metric.DISTANCE));
+        if (metric == null) throw new RequestException(400, "Unknown metric '" + p.get("metric") + "'");
+        if (algo.equals("alt") && !metric.name.equals(Metric.DISTANCE)) throw new RequestException(400, "alt only supports the distance metric");
+        // resolve the destination first and use it to rank source candidates, as the console flow does
+        List<Node> toMatches = resolve(required(p, "to"), null);
+        Node to = toMatches.get(0);
+        List<Node> fromMatches = resolve(required(p, "from"), to);
+        Node from = fromMatches.get(0);
+        List<Node> stops = new ArrayList<>();
+        stops.add(from);
+        if (p.containsKey("via") && !p.get("via").trim().isEmpty()) stops.add(resolve(p.get("via").trim(), to).get(0));
+        stops.add(to);
+
+        String keyword = p.get("keyword");
+        List<Integer> path = new ArrayList<>();
+        if (keyword != null && !keyword.trim().isEmpty()) {
+            if (stops.size() > 2) throw new RequestException(400, "Use either via or keyword, not both");
+            if (!algo.equals("dijkstra") || !metric.name.equals(Metric.DISTANCE)) throw new RequestException(400, "keyword routes use dijkstra on distance");
+            path = finder.routeWithLandmark(snapped(from), snapped(to), keyword.trim());
+            if (path.isEmpty()) throw new RequestException(404, "No road route from '" + from.name + "' to '" + to.name + "'");
+        } else {
+            for (int i = 0; i + 1 < stops.size(); i++) {
+                List<Integer> leg = search(algo, metric, snapped(stops.get(i)), snapped(stops.get(i + 1)));
+                if (leg.isEmpty()) throw new RequestException(404, "No road route from '" + stops.get(i).name + "' to '" + stops.get(i + 1).name + "'");
+                if (!path.isEmpty()) path.remove(path.size() - 1);
+                path.addAll(leg);
+            }
+        }
+
+        Json j = new Json().obj().field("algo", algo).field("metric", metric.name);
+        j.key("from"); poi(j, from);
+        j.key("to"); poi(j, to);
+        if (stops.size() > 2) { j.key("via"); poi(j, stops.get(1)); }
+        alsoMatched(j, "fromAlternatives", fromMatches, to);
+        alsoMatched(j, "toAlternatives", toMatches, null);
+        j.key("route");
+        path(j, path);
+        return j.endObj();
+    }
+
+    private List<Integer> search(String algo, Metric metric, int src, int dest) {
+        switch (algo) {
+            case "dijkstra": return finder.dijkstra(src, dest, metric);
+            case "astar": return finder.aStar(src, dest, metric);
+            case "bidijkstra": return finder.bidirectionalDijkstra(src, dest, metric);
+            case "biastar": return finder.bidirectionalAStar(src, dest, metric);
+            default: return finder.altStar(src, dest);
+        }
+    }
+
+    private Json alternatives(Map<String,String> p) throws RequestException {
+        Node to = resolve(required(p, "to"), null).get(0);
+        Node from = resolve(required(p, "from"), to).get(0);
+        int k = intParam(p, "k", 3);
+        if (k < 1 || k > MAX_ALTERNATIVES) throw new RequestException(400, "k must be between 1 and " + MAX_ALTERNATIVES);
+        String method = p.getOrDefault("method", "yen");
+        List<List<Integer>> routes;
+        if (method.equals("yen")) routes = finder.kAlternatives(snapped(from), snapped(to), k);
+        else if (method.equals("penalty")) routes = finder.goodAlternatives(snapped(from), snapped(to), k, ALTERNATIVE_STRETCH);
+        else throw new RequestException(400, "Unknown method '" + method + "' (yen or penalty)");
+        Json j = new Json().obj();
+        j.key("from"); poi(j, from);
+        j.key("to"); poi(j, to);
+        j.key("routes").arr();
+        for (List<Integer> r : routes) path(j, r);
+        return j.endArr().endObj();
+    }
+
+    private Json matrix(Map<String,String> p) throws RequestException {
+        String[] parts = required(p, "ids").split(",");
+        if (parts.length > MAX_MATRIX_IDS) throw new RequestException(400, "At most " + MAX_MATRIX_IDS + " ids per matrix");
+        int[] ids = new int[parts.length];
+        List<Integer> roadIds = new ArrayList<>();
+        Map<Integer,Integer> column = new HashMap<>(); // road id -> matrix column
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                ids[i] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new RequestException(400, "Bad POI id: " + parts[i]);
+            }
+            if (!pois.nodes.containsKey(ids[i])) throw new RequestException(404, "Unknown POI id " + ids[i]);
+            Integer r = snap.get(ids[i]);
+            if (r != null && !column.containsKey(r)) {
+                column.put(r, roadIds.size());
+                roadIds.add(r);
+            }
+        }
+        int[] distinct = roadIds.stream().mapToInt(Integer::intValue).toArray();
+        // already on a search thread, so compute the rows here instead of forking onto another pool
+        double[][] rows = new double[distinct.length][];
+        for (int i = 0; i < distinct.length; i++) rows[i] = finder.distancesFrom(distinct[i], distinct);
+
+        Json j = new Json().obj().key("ids").arr();
+        for (int id : ids) j.val(id);
+        j.endArr().key("meters").arr();
+        for (int a : ids) {
+            j.arr();
+            Integer ra = snap.get(a);
+            for (int b : ids) {
+                Integer rb = snap.get(b);
+                j.val(ra == null || rb == null ? Double.NaN : round1(rows[column.get(ra)][column.get(rb)]));
+            }
+            j.endArr();
+        }
+        return j.endArr().endObj();
+    }
+
+    private Json tour(Map<String,String> p) throws RequestException {
+        String[] parts = required(p, "stops").split(",");
+        if (parts.length > MAX_TOUR_STOPS) throw new RequestException(400, "At most " + MAX_TOUR_STOPS + " stops per tour");
+        TourPlanner.End end;
+        try {
+            end = TourPlanner.End.valueOf(p.getOrDefault("end", "free").trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, "end must be free, last or start");
+        }
+        List<Node> stops = new ArrayList<>();
+        for (String part : parts) {
+            if (part.trim().isEmpty()) throw new RequestException(400, "Empty stop in '" + p.get("stops") + "'");
+            // later names are ranked by closeness to the previous stop
+            stops.add(resolve(part.trim(), stops.isEmpty() ? null : stops.get(stops.size() - 1)).get(0));
+        }
+        int[] roadIds = new int[stops.size()];
+        for (int i = 0; i < roadIds.length; i++) roadIds[i] = snapped(stops.get(i));
+        TourPlanner.Tour tour = new TourPlanner(finder).plan(roadIds, end);
+        if (tour == null) throw new RequestException(404, "Some stops cannot be reached from each other by road");
+
+        Json j = new Json().obj().field("end", end.name().toLowerCase()).field("exact", tour.exact);
+        j.key("stops").arr();
+        for (int i : tour.visitOrder) poi(j, stops.get(i));
+        j.endArr().key("route");
+        path(j, tour.path);
+        return j.endObj();
+    }
+
+    private Json isochrone(Map<String,String> p) throws RequestException {
+        Node from = resolve(required(p, "from"), null).get(0);
+        Metric metric = finder.metric(p.getOrDefault("metric", Metric.TIME));
+        if (metric == null) throw new RequestException(400, "Unknown metric '" + p.get("metric") + "'");
+        String[] parts = required(p, "budgets").split(",");
+        if (parts.length > MAX_BUDGETS) throw new RequestException(400, "At most " + MAX_BUDGETS + " budgets per request");
+        double[] budgets = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                budgets[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new RequestException(400, "Bad budget: " + parts[i]);
+            }
+            if (!(budgets[i] >= 0) || Double.isInfinite(budgets[i])) throw new RequestException(400, "Budgets must be non-negative numbers: " + parts[i]);
+        }
+        // one search up to the largest budget answers all of them
+        List<Isochrone> isochrones = Isochrone.compute(finder, snapped(from), budgets, metric, pois, snap);
+
+        Json j = new Json().obj().field("metric", metric.name);
+        j.key("from"); poi(j, from);
+        j.key("isochrones").arr();
+        for (Isochrone iso : isochrones) {
+            j.obj().field("budget", iso.budget).key("roadNodes").arr();
+            for (int id : iso.nodes) j.val(id);
+            j.endArr().key("pois").arr();
+            for (Node n : iso.pois) poi(j, n);
+            j.endArr().endObj();
+        }
+        j.endArr().key("geojson");
+        Isochrone.writeGeoJson(j, isochrones, metric.name);
+        return j.endObj();
+    }
+
+    private Json nearest(Map<String,String> p) throws RequestException {
+        double lat = doubleParam(p, "lat", null), lon = doubleParam(p, "lon", null);
+        int k = intParam(p, "k", 5);
+        double radius = doubleParam(p, "radius", 500.0);
+        if (k < 1) throw new RequestException(400, "k must be positive");
+        Json j = new Json().obj().key("results").arr();
+        for (Node n : pois.spatialIndex().kNearest(lat, lon, k, radius)) {
+            j.obj().field("id", n.id).field("name", n.name).field("type", n.type)
+                    .field("lat", n.lat).field("lon", n.lon)
+                    .field("meters", round1(Main.haversine(lat, lon, n.lat, n.lon))).endObj();
+        }
+        return j.endArr().endObj();
+    }
+
+    private Json resolve(Map<String,String> p) throws RequestException {
+        String q = required(p, "q");
+        Integer near = p.containsKey("near") ? intParam(p, "near", 0) : null;
+        if (near != null && !pois.nodes.containsKey(near)) throw new RequestException(404, "Unknown POI id " + near);
+        List<Node> ranked = Main.rankCandidates(pois, q, near);
+        Json j = new Json().obj().field("query", q);
+        j.field("confident", !ranked.isEmpty() && Main.isConfident(ranked, near));
+        j.key("matches").arr();
+        for (Node n : ranked) poi(j, n);
+        j.endArr();
+        if (ranked.isEmpty()) {
+            j.key("suggestions").arr();
+            for (Node n : Main.collectCandidates(pois, q, 5)) poi(j, n);
+            j.endArr();
+        }
+        return j.endObj();
+    }
+
+    private Json health(Map<String,String> p) {
+        Components comp = finder.components();
+        Json j = new Json().obj().field("status", "ok").field("roadNodes", road.n).field("roadEdges", road.m)
+                .field("pois", pois.nodes.size()).field("snappedPois", snap.size())
+                .field("weakComponents", comp.weakCount).field("strongComponents", comp.strongCount)
+                .field("mainComponentNodes", comp.strongSize(comp.mainStrong));
+        RouteCache c = finder.cache();
+        if (c != null) {
+            j.key("routeCache").obj().field("entries", c.size()).field("bytes", c.bytes()).field("hits", c.hits())
+                    .field("misses", c.misses()).field("hitRate", c.hitRate()).field("evictions", c.evictions())
+                    .field("invalidations", c.invalidations()).endObj();
+        }
+        return j.endObj();
+    }
+
+    private Json metrics(Map<String,String> p) {
+        Json j = new Json().obj().key("queries").arr();
+        RouteMetrics m = finder.routeMetrics();
+        if (m != null) {
+            for (RouteMetrics.Snapshot s : m.snapshot()) {
+                j.obj().field("algorithm", s.algorithm).field("mode", s.mode).field("count", s.queries).field("notFound", s.notFound);
+                j.key("latencyMicros").obj().field("mean", round1(s.meanNanos / 1e3)).field("p50", round1(s.p50Nanos / 1e3))
+                        .field("p90", round1(s.p90Nanos / 1e3)).field("p99", round1(s.p99Nanos / 1e3)).field("max", round1(s.maxNanos / 1e3)).endObj();
+                // search counters are not collected for cache, hierarchy and k-path queries
+                j.key("totals").obj().field("settled", s.settled).field("labelsSet", s.labelsSet)
+                        .field("heapPushes", s.heapPushes).field("decreaseKeys", s.decreaseKeys).endObj();
+                j.endObj();
+            }
+        }
+        return j.endArr().endObj();
+    }
+
+    // ---- JSON fragments ----
+
+    private static void poi(Json j, Node n) {
+        j.obj().field("id", n.id).field("name", n.name).field("type", n.type).field("lat", n.lat).field("lon", n.lon).endObj();
+    }
+
+    // Other candidates when a name was ambiguous
+    private static void alsoMatched(Json j, String key, List<Node> matches, Node other) {
+        if (matches.size() < 2 || Main.isConfident(matches, other == null ? null : other.id)) return;
+        j.key(key).arr();
+        for (int i = 1; i < Math.min(matches.size(), 6); i++) poi(j, matches.get(i));
+        j.endArr();
+    }
+
+    private void path(Json j, List<Integer> path) {
+        j.obj().field("distanceMeters", round1(finder.totalDistance(path))).field("timeSeconds", round1(finder.totalTime(path)));
+        j.key("nodes").arr();
+        for (int id : path) j.val(id);
+        j.endArr().key("coordinates").arr();
+        for (int id : path) {
+            int i = road.indexOf(id);
+            j.arr().val(road.lat[i]).val(road.lon[i]).endArr();
+        }
+        j.endArr().endObj();
+    }
+
+    private Json overlay(Map<String,String> p) {
+        WeightOverlay o = finder.overlay();
+        WeightOverlay.State s = o.state();
+        Json j = new Json().obj().field("version", s.version).field("closedSlots", s.closedSlots).field("scaledSlots", s.scaledSlots);
+        j.key("closed").arr();
+        for (int[] r : o.closedRoads()) j.arr().val(r[0]).val(r[1]).endArr();
+        return j.endArr().endObj();
+    }
+
+    private Json changeOverlay(Map<String,String> p) throws RequestException {
+        WeightOverlay o = finder.overlay();
+        String action = required(p, "action");
+        try {
+            switch (action) {
+                case "close":
+                case "reopen": {
+                    required(p, "from");
+                    required(p, "to");
+                    int from = intParam(p, "from", 0), to = intParam(p, "to", 0);
+                    if (action.equals("close")) o.closeRoad(from, to);
+                    else o.reopenRoad(from, to);
+                    break;
+                }
+                case "clear": o.clear(); break;
+                case "scale": {
+                    double factor = doubleParam(p, "factor", null);
+                    if (p.containsKey("highway")) o.scaleSpeed(required(p, "highway"), factor);
+                    else o.scaleSpeed(roadPairs(required(p, "roads")), factor);
+                    break;
+                }
+                default: throw new RequestException(400, "Unknown action '" + action + "' (close, reopen, scale or clear)");
+            }
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, e.getMessage());
+        }
+        return overlay(p);
+    }
+
+    // "a-b,c-d" -> {{a, b}, {c, d}}
+    private static int[][] roadPairs(String text) throws RequestException {
+        String[] parts = text.split(",");
+        int[][] roads = new int[parts.length][];
+        for (int i = 0; i < parts.length; i++) {
+            String[] ends = parts[i].trim().split("-");
+            try {
+                if (ends.length != 2) throw new NumberFormatException();
+                roads[i] = new int[] { Integer.parseInt(ends[0].trim()), Integer.parseInt(ends[1].trim()) };
+            } catch (NumberFormatException e) {
+                throw new RequestException(400, "Bad road '" + parts[i] + "' (expected fromId-toId)");
+            }
+        }
+        return roads;
+    }
+
+    // Non-finite values pass through, so Json writes them as null
+    private static double round1(double v) {
+        if (!Double.isFinite(v)) return v;
+        return Math.round(v * 10) / 10.0;
+    }
+
+    /** java ug.campus.RoutingServer [port]  (also: java ug.campus.Main server [port]) */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        String baseMode = "drive";
+        GraphSnapshot data = Main.loadRoadData(baseMode);
+        if (data == null) return;
+        RouteFinder finder = Main.newRouteFinder(data.road, baseMode);
+        finder.useLandmarks(LANDMARK_COUNT, Landmarks.Strategy.FARTHEST);
+        finder.useViaPoints(data.pois, Main.SNAP_METERS);
+        finder.useCache(new RouteCache(CACHE_ENTRIES, CACHE_BYTES, RouteCache.Policy.LFU), baseMode);
+        finder.useMetrics(new RouteMetrics(), baseMode);
+        RoutingServer server = new RoutingServer(data.road, data.pois, finder);
+        server.start(port);
+        System.out.println("Routing server listening on http://localhost:" + server.port() + "/");
+    }
+}
@@ -0,0 +1,76 @@
+package ug.campus;
+
+/**
+ * Reusable per-thread state for shortest-path searches over a {@link CsrGraph}.
+ * Labels are epoch-stamped: {@link #reset()} bumps the epoch instead of
+ * refilling the arrays, so a query only pays for the nodes it touches.
+ */
+public final class SearchContext {
+    public final int n;
+    private final double[] dist;
+    private final int[] prev;
+    private final int[] stamp;
+    private int[] blocked; // epoch-stamped like the labels, allocated on first use
+    private int epoch;
+    public final IndexedHeap heap;
+    public int settled; // nodes popped from the heap since the last reset()
+    public int labelsSet; // labels set or lowered since the last reset()
+
+    public SearchContext(int n) {
+        this.n = n;
+        this.dist = new double[n];
+        this.prev = new int[n];
+        this.stamp = new int[n];
+        this.heap = new IndexedHeap(n);
+    }
+
+    /** Starts a new search: all labels read as unreached afterwards. */
+    public void reset() {
+        if (++epoch == Integer.MAX_VALUE) {
+            java.util.Arrays.fill(stamp, 0);
+            if (blocked != null) java.util.Arrays.fill(blocked, 0);
+            epoch = 1;
+        }
+        heap.clear();
+        settled = 0;
+        labelsSet = 0;
+    }
+
+    /** Adds the other side's counters to this one, so a two-sided search reports one total. */
+    public void absorb(SearchContext other) {
+        settled += other.settled;
+        labelsSet += other.labelsSet;
+        heap.pushes += other.heap.pushes;
+        heap.decreases += other.heap.decreases;
+    }
+
+    public boolean reached(int v) {
+        return stamp[v] == epoch;
+    }
+
+    public double dist(int v) {
+        return stamp[v] == epoch ? dist[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /** Predecessor index of v in the current search tree, or -1. */
+    public int prev(int v) {
+        return stamp[v] == epoch ? prev[v] : -1;
+    }
+
+    /** Excludes v from the current search (cleared by the next reset()). */
+    public void block(int v) {
+        if (blocked == null) blocked = new int[n];
+        blocked[v] = epoch;
+    }
+
+    public boolean blocked(int v) {
+        return blocked != null && blocked[v] == epoch;
+    }
+
+    public void set(int v, double d, int p) {
+        labelsSet++;
+        stamp[v] = epoch;
+        dist[v] = d;
+        prev[v] = p;
+    }
+}
@@ -0,0 +1,158 @@
+package ug.campus;
+
+import java.util.*;
+
+/**
+ * Static 2-d tree over node coordinates for nearest, k-nearest and radius
+ * queries. The tree splits on longitude and latitude; candidates are ranked by
+ * exact haversine distance, ties going to the lower node id, so results match
+ * a brute-force scan in ascending id order.
+ *
+ * A subtree is skipped only on a true lower bound of its haversine distance. Past
+ * a latitude split that is the latitude gap itself. Past a longitude split every
+ * point lies across the plane of that meridian, and no point across it is closer
+ * than asin(cos(lat) * sin(lon gap)) radians, at any latitude.
+ */
+public final class SpatialIndex {
+    private static final double EARTH_RADIUS = 6371000.0;
+    // Bounds are compared with this much room for rounding, so a node exactly at the radius is never skipped
+    private static final double ROUNDING = 1 + 1e-9;
+
+    private final Node[] nodes; // in tree order: the median of [lo, hi) sits at (lo + hi) >>> 1
+    private final double[] lonRad;
+    private final double[] latRad;
+    // The meridian bound needs every node within half a turn of longitude of each split; true for any local extract
+    private final boolean lonPruning;
+
+    public SpatialIndex(Collection<Node> points) {
+        nodes = points.toArray(new Node[0]);
+        double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        for (Node n : nodes) {
+            minLon = Math.min(minLon, n.lon);
+            maxLon = Math.max(maxLon, n.lon);
+        }
+        lonPruning = maxLon - minLon < 180;
+        lonRad = new double[nodes.length];
+        latRad = new double[nodes.length];
+        build(0, nodes.length, 0);
+    }
+
+    /** Index over the nodes of a CSR graph (placeholder road nodes carry only id and coordinates). */
+    public static SpatialIndex of(CsrGraph csr) {
+        return of(csr, null);
+    }
+
+    /** Index over the CSR nodes whose dense index is flagged in include (all of them when null). */
+    public static SpatialIndex of(CsrGraph csr, boolean[] include) {
+        List<Node> nodes = new ArrayList<>(csr.n);
+        for (int i = 0; i < csr.n; i++) {
+            if (include == null || include[i]) nodes.add(new Node(csr.ids[i], null, csr.lat[i], csr.lon[i], "road"));
+        }
+        return new SpatialIndex(nodes);
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    /** Closest node within maxMeters (inclusive), or null. */
+    public Node nearest(double lat, double lon, double maxMeters) {
+        List<Node> best = kNearest(lat, lon, 1, maxMeters);
+        return best.isEmpty() ? null : best.get(0);
+    }
+
+    /** Up to k closest nodes within maxMeters, nearest first. */
+    public List<Node> kNearest(double lat, double lon, int k, double maxMeters) {
+        Search s = new Search(lat, lon, k, maxMeters);
+        s.visit(0, nodes.length, 0);
+        return s.result();
+    }
+
+    /** All nodes within radiusMeters, nearest first. */
+    public List<Node> withinRadius(double lat, double lon, double radiusMeters) {
+        return kNearest(lat, lon, Integer.MAX_VALUE, radiusMeters);
+    }
+
+    /** Sorts nodes by distance to a point, computing each distance once. */
+    public static void sortByDistance(List<Node> list, double lat, double lon) {
+        Map<Node, Double> d = new IdentityHashMap<>();
+        for (Node n : list) d.put(n, Main.haversine(lat, lon, n.lat, n.lon));
+        list.sort(Comparator.comparingDouble((Node n) -> d.get(n)).thenComparingInt(n -> n.id));
+    }
+
+    // Median-split [lo, hi) on longitude (depth even) or latitude (depth odd)
+    private void build(int lo, int hi, int depth) {
+        if (hi - lo <= 0) return;
+        Comparator<Node> cmp = (depth & 1) == 0
+                ? Comparator.comparingDouble((Node n) -> n.lon)
+                : Comparator.comparingDouble((Node n) -> n.lat);
+        Arrays.sort(nodes, lo, hi, cmp);
+        int mid = (lo + hi) >>> 1;
+        lonRad[mid] = Math.toRadians(nodes[mid].lon);
+        latRad[mid] = Math.toRadians(nodes[mid].lat);
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    private final class Search {
+        final double lat, lon, qLon, qLat, cosQ;
+        final int k;
+        double bound;
+        double sinBound; // sin of bound in radians of arc, or 2 (never reached) once bound is a quarter turn or more
+        // max-heap on (distance, id) holding the current best k
+        final PriorityQueue<double[]> best = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Double.compare(b[0], a[0]) : Double.compare(nodes[(int) b[1]].id, nodes[(int) a[1]].id));
+
+        Search(double lat, double lon, int k, double maxMeters) {
+            this.lat = lat;
+            this.lon = lon;
+            this.qLon = Math.toRadians(lon);
+            this.qLat = Math.toRadians(lat);
+            this.cosQ = Math.cos(qLat);
+            this.k = k;
+            setBound(maxMeters);
+        }
+
+        void setBound(double meters) {
+            bound = meters;
+            double arc = meters * ROUNDING / EARTH_RADIUS;
+            sinBound = arc < Math.PI / 2 ? Math.sin(arc) : 2;
+        }
+
+        void visit(int lo, int hi, int depth) {
+            if (hi - lo <= 0) return;
+            int mid = (lo + hi) >>> 1;
+            Node n = nodes[mid];
+            double d = Main.haversine(lat, lon, n.lat, n.lon);
+            if (d <= bound) offer(d, mid);
+            boolean onLon = (depth & 1) == 0;
+            double diff = onLon ? qLon - lonRad[mid] : qLat - latRad[mid];
+            int nearLo = diff < 0 ? lo : mid + 1, nearHi = diff < 0 ? mid : hi;
+            int farLo = diff < 0 ? mid + 1 : lo, farHi = diff < 0 ? hi : mid;
+            visit(nearLo, nearHi, depth + 1);
+            if (!(onLon ? farLon(Math.abs(diff)) : Math.abs(diff) * EARTH_RADIUS > bound * ROUNDING)) visit(farLo, farHi, depth + 1);
+        }
+
+        // True when nothing across a meridian gap radians of longitude away can be within bound
+        boolean farLon(double gap) {
+            return lonPruning && gap < Math.PI && cosQ * Math.sin(gap) > sinBound;
+        }
+
+        void offer(double d, int slot) {
+            if (best.size() == k) {
+                double[] worst = best.peek();
+                if (d > worst[0] || (d == worst[0] && nodes[slot].id > nodes[(int) worst[1]].id)) return;
+                best.poll();
+            }
+            best.add(new double[] { d, slot });
+            if (best.size() == k) setBound(best.peek()[0]);
+        }
+
+        List<Node> result() {
+            List<double[]> entries = new ArrayList<>(best);
+            entries.sort((a, b) -> a[0] != b[0] ? Double.compare(a[0], b[0]) : Integer.compare(nodes[(int) a[1]].id, nodes[(int) b[1]].id));
+            List<Node> out = new ArrayList<>(entries.size());
+            for (double[] e : entries) out.add(nodes[(int) e[1]]);
+            return out;
+        }
+    }
+}
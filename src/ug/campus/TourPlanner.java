@@ -0,0 +1,243 @@
+package ug.campus;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Visiting order for a multi-stop trip over road nodes. The first stop is the
+ * start; the trip may end anywhere, at the last given stop, or back at the start.
+ *
+ * Costs come from one distance matrix (one one-to-many search per stop), and the
+ * legs of the stitched path from the same searches, so they agree even if the
+ * weight overlay changes while planning. Up to
+ * EXACT_LIMIT stops the order is optimal (Held-Karp dynamic programming over
+ * visited-set bitmasks); above that, 2-opt and Or-opt local search runs from
+ * several starting tours in parallel and the best result is kept.
+ */
+public final class TourPlanner {
+    public enum End {
+        /** Finish at whichever stop is cheapest. */
+        FREE,
+        /** Finish at the last given stop. */
+        LAST,
+        /** Return to the first stop. */
+        START
+    }
+
+    public static final int EXACT_LIMIT = 15;
+    private static final int RESTARTS = 16;
+
+    private final RouteFinder finder;
+
+    public TourPlanner(RouteFinder finder) {
+        this.finder = finder;
+    }
+
+    /** Result: stops in visiting order, total road distance and the stitched road path. */
+    public static final class Tour {
+        public final int[] visitOrder;  // indices into the given stops
+        public final int[] order;       // road node ids
+        public final double meters;
+        public final List<Integer> path;
+        public final boolean exact;     // true when the order is provably optimal
+
+        Tour(int[] visitOrder, int[] order, double meters, List<Integer> path, boolean exact) {
+            this.visitOrder = visitOrder;
+            this.order = order;
+            this.meters = meters;
+            this.path = path;
+            this.exact = exact;
+        }
+    }
+
+    /** Best order for the stops (road node ids, first = start); null if some stop cannot be reached. */
+    public Tour plan(int[] stops, End end) {
+        int n = stops.length;
+        if (n == 0) throw new IllegalArgumentException("No stops");
+        double[][] d = new double[n][];
+        int[][][] legPaths = new int[n][n][];
+        IntStream.range(0, n).parallel().forEach(i -> d[i] = finder.distancesFrom(stops[i], stops, legPaths[i]));
+        boolean exact = n <= EXACT_LIMIT;
+        int[] perm = exact ? heldKarp(d, end) : localSearch(d, end);
+        if (perm == null || Double.isInfinite(cost(perm, d, end))) return null;
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = stops[perm[i]];
+        List<Integer> path = new ArrayList<>();
+        path.add(order[0]);
+        int legs = end == End.START ? n : n - 1;
+        for (int i = 0; i < legs; i++) {
+            int[] leg = legPaths[perm[i]][perm[(i + 1) % n]];
+            if (leg == null || leg.length == 0) return null;
+            for (int k = 1; k < leg.length; k++) path.add(leg[k]);
+        }
+        return new Tour(perm, order, cost(perm, d, end), path, exact);
+    }
+
+    // Total cost of visiting stops in perm order (perm[0] is the start)
+    static double cost(int[] perm, double[][] d, End end) {
+        double c = 0;
+        for (int i = 0; i + 1 < perm.length; i++) c += d[perm[i]][perm[i + 1]];
+        if (end == End.START && perm.length > 1) c += d[perm[perm.length - 1]][perm[0]];
+        return c;
+    }
+
+    /*
+     * best[mask][j]: cheapest path from stop 0 through exactly the stops in mask
+     * (bit k-1 = stop k), ending at stop j. With End.LAST the last stop is kept
+     * out of the masks and appended at the end.
+     */
+    static int[] heldKarp(double[][] d, End end) {
+        int n = d.length;
+        if (n == 1) return new int[] { 0 };
+        int last = end == End.LAST ? n - 1 : -1;
+        int k = last >= 0 ? n - 2 : n - 1; // stops that can be visited in any order
+        if (k == 0) return last >= 0 ? new int[] { 0, last } : new int[] { 0 };
+        int full = (1 << k) - 1;
+        double[][] best = new double[1 << k][k];
+        int[][] parent = new int[1 << k][k];
+        for (double[] row : best) Arrays.fill(row, Double.POSITIVE_INFINITY);
+        for (int j = 0; j < k; j++) {
+            best[1 << j][j] = d[0][j + 1];
+            parent[1 << j][j] = -1;
+        }
+        for (int mask = 1; mask <= full; mask++) {
+            for (int j = 0; j < k; j++) {
+                double c = best[mask][j];
+                if ((mask & (1 << j)) == 0 || Double.isInfinite(c)) continue;
+                for (int x = 0; x < k; x++) {
+                    if ((mask & (1 << x)) != 0) continue;
+                    int next = mask | (1 << x);
+                    double nc = c + d[j + 1][x + 1];
+                    if (nc < best[next][x]) {
+                        best[next][x] = nc;
+                        parent[next][x] = j;
+                    }
+                }
+            }
+        }
+        int bestEnd = -1;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < k; j++) {
+            double c = best[full][j];
+            if (end == End.START) c += d[j + 1][0];
+            else if (last >= 0) c += d[j + 1][last];
+            if (c < bestCost) {
+                bestCost = c;
+                bestEnd = j;
+            }
+        }
+        if (bestEnd < 0) return null;
+        int[] perm = new int[n];
+        int pos = last >= 0 ? n - 2 : n - 1;
+        if (last >= 0) perm[n - 1] = last;
+        for (int mask = full, j = bestEnd; j >= 0; ) {
+            perm[pos--] = j + 1;
+            int p = parent[mask][j];
+            mask &= ~(1 << j);
+            j = p;
+        }
+        perm[0] = 0;
+        return perm;
+    }
+
+    // Nearest-neighbour and shuffled starting tours improved in parallel; best one wins
+    static int[] localSearch(double[][] d, End end) {
+        return IntStream.range(0, RESTARTS).parallel()
+                .mapToObj(r -> improve(r == 0 ? nearestNeighbour(d, end) : shuffled(d.length, end, new Random(r)), d, end))
+                .min(Comparator.comparingDouble(p -> cost(p, d, end)))
+                .orElse(null);
+    }
+
+    static int[] nearestNeighbour(double[][] d, End end) {
+        int n = d.length;
+        int[] perm = new int[n];
+        boolean[] used = new boolean[n];
+        used[0] = true;
+        int free = n - 1;
+        if (end == End.LAST) {
+            perm[n - 1] = n - 1;
+            used[n - 1] = true;
+            free--;
+        }
+        for (int i = 1; i <= free; i++) {
+            int prev = perm[i - 1], pick = -1;
+            for (int x = 0; x < n; x++) {
+                if (!used[x] && (pick < 0 || d[prev][x] < d[prev][pick])) pick = x;
+            }
+            perm[i] = pick;
+            used[pick] = true;
+        }
+        return perm;
+    }
+
+    static int[] shuffled(int n, End end, Random rnd) {
+        int[] perm = IntStream.range(0, n).toArray();
+        int hi = end == End.LAST ? n - 2 : n - 1; // last movable position
+        for (int i = hi; i > 1; i--) {
+            int j = 1 + rnd.nextInt(i);
+            int t = perm[i];
+            perm[i] = perm[j];
+            perm[j] = t;
+        }
+        return perm;
+    }
+
+    // 2-opt (segment reversal) and Or-opt (moving runs of 1-3 stops) until neither improves; the endpoints stay put
+    static int[] improve(int[] perm, double[][] d, End end) {
+        int n = perm.length;
+        int hi = end == End.LAST ? n - 2 : n - 1;
+        double best = cost(perm, d, end);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 1; i < hi; i++) {
+                for (int j = i + 1; j <= hi; j++) {
+                    reverse(perm, i, j);
+                    double c = cost(perm, d, end);
+                    if (c < best - 1e-9) {
+                        best = c;
+                        improved = true;
+                    } else {
+                        reverse(perm, i, j);
+                    }
+                }
+            }
+            for (int len = 1; len <= 3; len++) {
+                for (int i = 1; i + len - 1 <= hi; i++) {
+                    for (int to = 1; to + len - 1 <= hi; to++) {
+                        if (to == i) continue;
+                        int[] moved = moveRun(perm, i, len, to);
+                        double c = cost(moved, d, end);
+                        if (c < best - 1e-9) {
+                            System.arraycopy(moved, 0, perm, 0, n);
+                            best = c;
+                            improved = true;
+                        }
+                    }
+                }
+            }
+        }
+        return perm;
+    }
+
+    private static void reverse(int[] a, int i, int j) {
+        for (; i < j; i++, j--) {
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    // Copy of perm with perm[i, i+len) moved so that it starts at index `to` of the result
+    private static int[] moveRun(int[] perm, int i, int len, int to) {
+        int n = perm.length;
+        int[] rest = new int[n - len];
+        for (int x = 0, r = 0; x < n; x++) if (x < i || x >= i + len) rest[r++] = perm[x];
+        int[] out = new int[n];
+        System.arraycopy(rest, 0, out, 0, to);
+        System.arraycopy(perm, i, out, to, len);
+        System.arraycopy(rest, to, out, to + len, n - len - to);
+        return out;
+    }
+}
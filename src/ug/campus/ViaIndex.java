@@ -0,0 +1,56 @@
+package ug.campus;
+
+import java.util.*;
+
+/**
+ * Keyword lookup of via-point candidates: places whose name contains the
+ * keyword (through a NameIndex) or whose type equals it, mapped once to the
+ * dense road node each one is routed through.
+ */
+final class ViaIndex {
+    private final NameIndex names;
+    private final Map<String, List<Node>> byType = new HashMap<>();
+    private final Map<Integer, Integer> roadIndex = new HashMap<>(); // place id -> dense road index
+
+    /** placeToRoad maps place ids to road node ids; null when the places are the road nodes themselves. */
+    ViaIndex(CsrGraph csr, Collection<Node> places, Map<Integer, Integer> placeToRoad) {
+        List<Node> routable = new ArrayList<>();
+        for (Node p : places) {
+            Integer roadId = placeToRoad == null ? Integer.valueOf(p.id) : placeToRoad.get(p.id);
+            int idx = roadId == null ? -1 : csr.indexOf(roadId);
+            if (idx < 0) continue; // not on (or near) the road graph
+            roadIndex.put(p.id, idx);
+            routable.add(p);
+            if (p.type != null && !p.type.trim().isEmpty()) {
+                byType.computeIfAbsent(p.type.trim().toLowerCase(), k -> new ArrayList<>()).add(p);
+            }
+        }
+        this.names = new NameIndex(routable);
+    }
+
+    /** Road nodes the places are routed through, for names containing or types equal to the keyword. */
+    static ViaIndex ofRoadNodes(CsrGraph csr, Graph graph) {
+        Collection<Node> nodes;
+        if (graph != null) {
+            nodes = graph.nodes.values();
+        } else {
+            // without Node objects the road nodes carry their placeholder names
+            List<Node> placeholders = new ArrayList<>(csr.n);
+            for (int i = 0; i < csr.n; i++) placeholders.add(new Node(csr.ids[i], RoadGraphLoader.nodeName(csr.ids[i]), csr.lat[i], csr.lon[i], "road"));
+            nodes = placeholders;
+        }
+        return new ViaIndex(csr, nodes, null);
+    }
+
+    /** Distinct dense road indices of every place matching the keyword. */
+    int[] candidates(String keyword) {
+        if (keyword == null || Main.normalizeName(keyword).isEmpty()) return new int[0];
+        Set<Node> matches = new LinkedHashSet<>();
+        // exact, startsWith and contains tiers together are every name containing the keyword
+        matches.addAll(names.exact(keyword));
+        matches.addAll(names.startingWith(keyword));
+        matches.addAll(names.containing(keyword));
+        matches.addAll(byType.getOrDefault(keyword.trim().toLowerCase(), Collections.emptyList()));
+        return matches.stream().mapToInt(p -> roadIndex.get(p.id)).distinct().toArray();
+    }
+}
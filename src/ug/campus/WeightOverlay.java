@@ -0,0 +1,205 @@
+package ug.campus;
+
+import java.util.*;
+
+/**
+ * Runtime changes to a RouteFinder's edge costs: closed roads and speed factors
+ * (exam-day or graduation congestion), obtained from {@link RouteFinder#overlay()}.
+ *
+ * Writers are serialised on the overlay. Each change copies the per-slot arrays
+ * into a new immutable {@link State} with the next version number, and the
+ * finder swaps in re-weighted copies of its profiles with a single volatile
+ * write; queries read that reference once and never lock, so a search already
+ * running finishes on the weights it started with. Cached routes are dropped
+ * only where the change can affect them (see RouteFinder).
+ *
+ * A closed slot costs +infinity under every profile. Speed factors apply to the
+ * time profile only (0.5 = half speed, so twice the time); other profiles have
+ * no notion of speed.
+ */
+public final class WeightOverlay {
+    /** One published version of the overlay; never modified once published. */
+    public static final class State {
+        public final long version;
+        public final int closedSlots, scaledSlots;
+        private final boolean[] closed;    // per edge slot; null when nothing is closed
+        private final float[] speedFactor; // per edge slot, 1 = unchanged; null when nothing is scaled
+
+        private State(long version, boolean[] closed, float[] speedFactor) {
+            this.version = version;
+            int c = 0, s = 0;
+            if (closed != null) for (boolean b : closed) if (b) c++;
+            if (speedFactor != null) for (float f : speedFactor) if (f != 1f) s++;
+            this.closedSlots = c;
+            this.scaledSlots = s;
+            this.closed = c == 0 ? null : closed;
+            this.speedFactor = s == 0 ? null : speedFactor;
+        }
+
+        public boolean isEmpty() {
+            return closed == null && speedFactor == null;
+        }
+
+        public boolean closed(int e) {
+            return closed != null && closed[e];
+        }
+
+        public float speedFactor(int e) {
+            return speedFactor == null ? 1f : speedFactor[e];
+        }
+
+        // The profile with this state applied (the profile itself when nothing touches it)
+        Metric apply(Metric profile) {
+            Metric base = profile.base;
+            boolean time = base.name.equals(Metric.TIME);
+            if (closed == null && (speedFactor == null || !time)) return base;
+            double[] w = base.weight.clone();
+            for (int e = 0; e < w.length; e++) {
+                if (closed != null && closed[e]) w[e] = Double.POSITIVE_INFINITY;
+                else if (time && speedFactor != null) w[e] /= speedFactor[e];
+            }
+            return base.withWeights(w);
+        }
+    }
+
+    /** What one update touched, for repairing cached routes. */
+    static final class Change {
+        final int[] closureSlots; // opened or closed
+        final int[] speedSlots;   // speed factor changed (time profile only)
+        final boolean reopened;   // some slot became cheaper under every profile
+        final boolean faster;     // some slot became cheaper under the time profile
+
+        Change(int[] closureSlots, int[] speedSlots, boolean reopened, boolean faster) {
+            this.closureSlots = closureSlots;
+            this.speedSlots = speedSlots;
+            this.reopened = reopened;
+            this.faster = faster;
+        }
+    }
+
+    private final CsrGraph csr;
+    private final RouteFinder finder;
+    private volatile State state = new State(0, null, null);
+
+    WeightOverlay(RouteFinder finder) {
+        this.finder = finder;
+        this.csr = finder.csr();
+    }
+
+    /** The current version; readers may hold on to it. */
+    public State state() {
+        return state;
+    }
+
+    /** Closes the road between two road node ids in both directions; returns the new version. */
+    public synchronized long closeRoad(int fromId, int toId) {
+        return setClosed(road(fromId, toId), true);
+    }
+
+    public synchronized long reopenRoad(int fromId, int toId) {
+        return setClosed(road(fromId, toId), false);
+    }
+
+    /** Sets the speed factor of every edge of an OSM highway class (1 restores the normal speed). */
+    public synchronized long scaleSpeed(String highway, double factor) {
+        int[] slots = new int[csr.m];
+        int count = 0;
+        for (int e = 0; e < csr.m; e++) if (highway.equals(csr.highway(e))) slots[count++] = e;
+        if (count == 0) throw new IllegalArgumentException("No roads of highway class '" + highway + "'");
+        return setFactor(Arrays.copyOf(slots, count), factor);
+    }
+
+    /** Sets the speed factor of the roads between each {fromId, toId} pair, both directions. */
+    public synchronized long scaleSpeed(int[][] roads, double factor) {
+        int[] slots = new int[0];
+        for (int[] r : roads) {
+            int[] s = road(r[0], r[1]);
+            int k = slots.length;
+            slots = Arrays.copyOf(slots, k + s.length);
+            System.arraycopy(s, 0, slots, k, s.length);
+        }
+        return setFactor(slots, factor);
+    }
+
+    /** Reopens everything and restores normal speeds. */
+    public synchronized long clear() {
+        return publish(null, null);
+    }
+
+    /** Closed roads as {fromId, toId} pairs, one per closed edge slot. */
+    public List<int[]> closedRoads() {
+        State s = state;
+        List<int[]> out = new ArrayList<>();
+        if (s.closed == null) return out;
+        for (int u = 0; u < csr.n; u++) {
+            for (int e = csr.offsets[u]; e < csr.offsets[u + 1]; e++) {
+                if (s.closed[e]) out.add(new int[] { csr.ids[u], csr.ids[csr.targets[e]] });
+            }
+        }
+        return out;
+    }
+
+    // Re-publishes the current version, e.g. after a profile was added to the finder
+    synchronized void republish() {
+        finder.overlayChanged(state, null);
+    }
+
+    // Every slot u->v and v->u between the two ids
+    private int[] road(int fromId, int toId) {
+        int a = csr.indexOf(fromId), b = csr.indexOf(toId);
+        if (a < 0 || b < 0) throw new IllegalArgumentException("Unknown road node " + (a < 0 ? fromId : toId));
+        int[] slots = new int[csr.degree(a) + csr.degree(b)];
+        int count = 0;
+        for (int e = csr.offsets[a]; e < csr.offsets[a + 1]; e++) if (csr.targets[e] == b) slots[count++] = e;
+        for (int e = csr.offsets[b]; e < csr.offsets[b + 1]; e++) if (csr.targets[e] == a) slots[count++] = e;
+        if (count == 0) throw new IllegalArgumentException("No road between " + fromId + " and " + toId);
+        return Arrays.copyOf(slots, count);
+    }
+
+    private long setClosed(int[] slots, boolean close) {
+        State s = state;
+        boolean[] closed = s.closed == null ? new boolean[csr.m] : s.closed.clone();
+        for (int e : slots) closed[e] = close;
+        return publish(closed, s.speedFactor);
+    }
+
+    private long setFactor(int[] slots, double factor) {
+        if (!(factor > 0) || Double.isInfinite(factor)) throw new IllegalArgumentException("Speed factor must be positive (close the road instead): " + factor);
+        State s = state;
+        float[] f = s.speedFactor == null ? filled(csr.m) : s.speedFactor.clone();
+        for (int e : slots) f[e] = (float) factor;
+        return publish(s.closed, f);
+    }
+
+    private static float[] filled(int m) {
+        float[] f = new float[m];
+        Arrays.fill(f, 1f);
+        return f;
+    }
+
+    // Diffs against the current version and hands the new one to the finder; a no-op keeps the version
+    private long publish(boolean[] closed, float[] speedFactor) {
+        State prev = state;
+        State next = new State(prev.version + 1, closed, speedFactor);
+        int[] closure = new int[16], speed = new int[16];
+        int nc = 0, ns = 0;
+        boolean reopened = false, faster = false;
+        for (int e = 0; e < csr.m; e++) {
+            boolean was = prev.closed(e), is = next.closed(e);
+            float before = prev.speedFactor(e), after = next.speedFactor(e);
+            if (was != is) {
+                if (nc == closure.length) closure = Arrays.copyOf(closure, nc * 2);
+                closure[nc++] = e;
+                reopened |= was;
+            } else if (before != after) {
+                if (ns == speed.length) speed = Arrays.copyOf(speed, ns * 2);
+                speed[ns++] = e;
+                faster |= after > before;
+            }
+        }
+        if (nc == 0 && ns == 0) return prev.version;
+        state = next;
+        finder.overlayChanged(next, new Change(Arrays.copyOf(closure, nc), Arrays.copyOf(speed, ns), reopened, faster));
+        return next.version;
+    }
+}